@@ -0,0 +1,58 @@
+#!/usr/bin/env bash
+#
+# Builds and runs the JMH benchmarks in bench/ on a plain JVM against the in-memory
+# FakeServices, no device needed. Arguments are passed to JMH, e.g.
+#   ./bench.sh UnlockBenchmark -p channels=1000
+# or, with -loadtest first, to LoadTest, which runs a command against a device with injected
+# latencies, failures and policy saves, e.g.
+#   ./bench.sh -loadtest -packages 500 -latency lognormal:300us,0.8 -- -pkg '*' -id '*' -set importance=2
+#
+# Instead of android.jar, whose classes only throw, the framework classes come from a
+# Robolectric android-all jar (org.robolectric:android-all), which ships real implementations.
+# The compile-only stubs in src/android are left out for the same reason. android.os.Parcel keeps
+# its data in native code, so bench/shadow replaces it with a pure Java version that is compiled
+# into the benchmark classes, which come first on the class path.
+
+LIB_DIR="$(realpath ${LIB_DIR:-lib})"
+SOURCE_DIR="$(realpath ${SOURCE_DIR:-src})"
+BENCH_DIR="$(realpath ${BENCH_DIR:-bench})"
+CLASSES_DIR="$(realpath -m ${BENCH_CLASSES_DIR:-bench-bin})"
+JMH_VERSION=${JMH_VERSION:-1.37}
+
+ANDROID_ALL_JAR="$(ls "$LIB_DIR"/android-all-*.jar 2>/dev/null | head -n 1)"
+if [ -z "$ANDROID_ALL_JAR" ]; then
+    echo "Missing library: \"android-all-<version>.jar\"" >&2
+    echo "Download org.robolectric:android-all for API 35 (e.g. 15-robolectric-12650502) and place it in $LIB_DIR" >&2
+    exit 1
+fi
+for jar in commons-cli-1.8.0.jar jmh-core-$JMH_VERSION.jar jmh-generator-annprocess-$JMH_VERSION.jar jopt-simple-5.0.4.jar commons-math3-3.6.1.jar; do
+    if [ ! -e "$LIB_DIR/$jar" ]; then
+        echo "Missing library: \"$jar\"" >&2
+        echo "Download library and place in $LIB_DIR" >&2
+        exit 1
+    fi
+done
+
+CLASSPATH="$LIB_DIR/commons-cli-1.8.0.jar:$LIB_DIR/jmh-core-$JMH_VERSION.jar:$LIB_DIR/jopt-simple-5.0.4.jar:$LIB_DIR/commons-math3-3.6.1.jar:$ANDROID_ALL_JAR"
+
+echo "Cleaning benchmark classes..."
+rm -rf "$CLASSES_DIR"
+mkdir -p "$CLASSES_DIR"
+
+echo "Running Java Compiler..."
+javac -source 1.8 -target 1.8 -d "$CLASSES_DIR" \
+      -cp "$CLASSPATH" \
+      -processorpath "$LIB_DIR/jmh-generator-annprocess-$JMH_VERSION.jar:$LIB_DIR/jmh-core-$JMH_VERSION.jar" \
+      "$BENCH_DIR"/shadow/android/os/*.java \
+      "$BENCH_DIR"/shadow/dalvik/system/*.java \
+      "$SOURCE_DIR"/io/github/nihilian/ncheditor/*.java \
+      "$BENCH_DIR"/src/io/github/nihilian/ncheditor/*.java || exit 1
+
+if [ "$1" = "-loadtest" ]; then
+    shift
+    echo "Running load test..."
+    exec java -cp "$CLASSES_DIR:$CLASSPATH" io.github.nihilian.ncheditor.LoadTest "$@"
+fi
+
+echo "Running benchmarks..."
+exec java -cp "$CLASSES_DIR:$CLASSPATH" org.openjdk.jmh.Main "$@"
@@ -0,0 +1,72 @@
+package android.os;
+
+import java.io.FileDescriptor;
+
+/**
+ * Pure Java replacement for the framework's Binder, whose constructor allocates a native
+ * object. Framework classes create binders as tokens while they are initialized, e.g.
+ * {@code AttributionSource}, so the android-all classes need it on a plain JVM. It is a local
+ * binder that never transacts; the benchmarks talk to {@code FakeServices} directly.
+ */
+public class Binder implements IBinder {
+    private IInterface owner;
+    private String descriptor;
+
+    public Binder() {}
+
+    public Binder(String descriptor) {
+        this.descriptor = descriptor;
+    }
+
+    public void attachInterface(IInterface owner, String descriptor) {
+        this.owner = owner;
+        this.descriptor = descriptor;
+    }
+
+    @Override
+    public String getInterfaceDescriptor() {
+        return descriptor;
+    }
+
+    @Override
+    public boolean pingBinder() {
+        return true;
+    }
+
+    @Override
+    public boolean isBinderAlive() {
+        return true;
+    }
+
+    @Override
+    public IInterface queryLocalInterface(String descriptor) {
+        return descriptor != null && descriptor.equals(this.descriptor) ? owner : null;
+    }
+
+    @Override
+    public void dump(FileDescriptor fd, String[] args) {
+    }
+
+    @Override
+    public void dumpAsync(FileDescriptor fd, String[] args) {
+    }
+
+    @Override
+    public void shellCommand(FileDescriptor in, FileDescriptor out, FileDescriptor err, String[] args, ShellCallback callback, ResultReceiver resultReceiver) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean transact(int code, Parcel data, Parcel reply, int flags) {
+        throw new UnsupportedOperationException("transact on a plain JVM");
+    }
+
+    @Override
+    public void linkToDeath(DeathRecipient recipient, int flags) {
+    }
+
+    @Override
+    public boolean unlinkToDeath(DeathRecipient recipient, int flags) {
+        return true;
+    }
+}
@@ -0,0 +1,213 @@
+package android.os;
+
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Pure Java replacement for the framework's Parcel, whose storage lives in native code that a
+ * plain JVM does not have. bench.sh puts it ahead of the android-all jar. It implements only
+ * what ncheditor and {@code FakeServices} use to copy channels and groups, which is enough for
+ * {@link android.app.NotificationChannel}, its sound {@code Uri} and its {@code AudioAttributes}
+ * without extras, and for a {@link android.app.NotificationChannelGroup} without channels;
+ * anything else fails with a {@link NoSuchMethodError}. The byte layout is its own, so data
+ * only round-trips through this class.
+ */
+public final class Parcel {
+    private byte[] data = new byte[64];
+    private int size;
+    private int position;
+
+    private Parcel() {}
+
+    public static Parcel obtain() {
+        return new Parcel();
+    }
+
+    public final void recycle() {
+        size = 0;
+        position = 0;
+    }
+
+    public final int dataSize() {
+        return size;
+    }
+
+    public final int dataPosition() {
+        return position;
+    }
+
+    public final void setDataPosition(int pos) {
+        position = pos;
+    }
+
+    public final byte[] marshall() {
+        return Arrays.copyOf(data, size);
+    }
+
+    public final void unmarshall(byte[] bytes, int offset, int length) {
+        data = Arrays.copyOfRange(bytes, offset, offset + length);
+        size = length;
+        position = length;
+    }
+
+    public final void writeInt(int val) {
+        ensure(4);
+        for (int shift = 24; shift >= 0; shift -= 8) {
+            data[position++] = (byte) (val >>> shift);
+        }
+        size = Math.max(size, position);
+    }
+
+    public final int readInt() {
+        if (position + 4 > size) {
+            throw new IllegalStateException("read past the end of the parcel");
+        }
+        int val = 0;
+        for (int i = 0; i < 4; i++) {
+            val = (val << 8) | (data[position++] & 0xff);
+        }
+        return val;
+    }
+
+    public final void writeLong(long val) {
+        writeInt((int) (val >>> 32));
+        writeInt((int) val);
+    }
+
+    public final long readLong() {
+        return ((long) readInt() << 32) | (readInt() & 0xffffffffL);
+    }
+
+    public final void writeByte(byte val) {
+        writeInt(val);
+    }
+
+    public final byte readByte() {
+        return (byte) readInt();
+    }
+
+    public final void writeBoolean(boolean val) {
+        writeInt(val ? 1 : 0);
+    }
+
+    public final boolean readBoolean() {
+        return readInt() != 0;
+    }
+
+    public final void writeString(String val) {
+        if (val == null) {
+            writeInt(-1);
+            return;
+        }
+        byte[] bytes = val.getBytes(StandardCharsets.UTF_8);
+        writeInt(bytes.length);
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, data, position, bytes.length);
+        position += bytes.length;
+        size = Math.max(size, position);
+    }
+
+    public final String readString() {
+        int length = readInt();
+        if (length < 0) {
+            return null;
+        }
+        if (position + length > size) {
+            throw new IllegalStateException("read past the end of the parcel");
+        }
+        String val = new String(data, position, length, StandardCharsets.UTF_8);
+        position += length;
+        return val;
+    }
+
+    public final void writeString8(String val) {
+        writeString(val);
+    }
+
+    public final String readString8() {
+        return readString();
+    }
+
+    public final void writeLongArray(long[] val) {
+        if (val == null) {
+            writeInt(-1);
+            return;
+        }
+        writeInt(val.length);
+        for (long element : val) {
+            writeLong(element);
+        }
+    }
+
+    public final long[] createLongArray() {
+        int length = readInt();
+        if (length < 0) {
+            return null;
+        }
+        long[] val = new long[length];
+        for (int i = 0; i < length; i++) {
+            val[i] = readLong();
+        }
+        return val;
+    }
+
+    public final void writeStringArray(String[] val) {
+        if (val == null) {
+            writeInt(-1);
+            return;
+        }
+        writeInt(val.length);
+        for (String element : val) {
+            writeString(element);
+        }
+    }
+
+    public final String[] readStringArray() {
+        int length = readInt();
+        if (length < 0) {
+            return null;
+        }
+        String[] val = new String[length];
+        for (int i = 0; i < length; i++) {
+            val[i] = readString();
+        }
+        return val;
+    }
+
+    /**
+     * Writes the class name followed by the object, like the framework's writeParcelable.
+     */
+    public final void writeParcelable(Parcelable p, int parcelableFlags) {
+        if (p == null) {
+            writeString(null);
+            return;
+        }
+        writeString(p.getClass().getName());
+        p.writeToParcel(this, parcelableFlags);
+    }
+
+    public final <T> T readParcelable(ClassLoader loader, Class<T> clazz) {
+        String name = readString();
+        if (name == null) {
+            return null;
+        }
+        Object creator;
+        try {
+            Field field = Class.forName(name, true, loader != null ? loader : Parcel.class.getClassLoader()).getField("CREATOR");
+            creator = field.get(null);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("no CREATOR for " + name, e);
+        }
+        Object value = creator instanceof Parcelable.ClassLoaderCreator
+                ? ((Parcelable.ClassLoaderCreator<?>) creator).createFromParcel(this, loader)
+                : ((Parcelable.Creator<?>) creator).createFromParcel(this);
+        return clazz.cast(value);
+    }
+
+    private void ensure(int bytes) {
+        if (position + bytes > data.length) {
+            data = Arrays.copyOf(data, Math.max(data.length * 2, position + bytes));
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package android.os;
+
+/**
+ * Pure Java replacement for the framework's SystemClock, whose clocks are native. Framework
+ * objects such as {@code ApplicationInfo} read it when they are created. Uptime and elapsed
+ * realtime both count from the JVM's start.
+ */
+public final class SystemClock {
+    private static final long START_NANOS = System.nanoTime();
+
+    private SystemClock() {}
+
+    public static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public static long uptimeMillis() {
+        return uptimeNanos() / 1000000;
+    }
+
+    public static long uptimeNanos() {
+        return System.nanoTime() - START_NANOS;
+    }
+
+    public static long elapsedRealtime() {
+        return uptimeMillis();
+    }
+
+    public static long elapsedRealtimeNanos() {
+        return uptimeNanos();
+    }
+
+    public static long currentTimeMicro() {
+        return System.currentTimeMillis() * 1000;
+    }
+}
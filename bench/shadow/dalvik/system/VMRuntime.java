@@ -0,0 +1,27 @@
+package dalvik.system;
+
+import java.lang.reflect.Array;
+
+/**
+ * Pure Java replacement for ART's VMRuntime, whose methods are native. Framework collections
+ * such as {@code SparseIntArray} allocate through it, so the android-all classes need it on a
+ * plain JVM. Like {@link android.os.Parcel} in this directory it implements only what the
+ * benchmarks reach.
+ */
+public final class VMRuntime {
+    private static final VMRuntime THE_ONE = new VMRuntime();
+
+    private VMRuntime() {}
+
+    public static VMRuntime getRuntime() {
+        return THE_ONE;
+    }
+
+    public Object newUnpaddedArray(Class<?> componentType, int minLength) {
+        return Array.newInstance(componentType, minLength);
+    }
+
+    public Object newNonMovableArray(Class<?> componentType, int length) {
+        return Array.newInstance(componentType, length);
+    }
+}
@@ -0,0 +1,56 @@
+package io.github.nihilian.ncheditor;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of turning a command line into work: building and parsing the options of a single
+ * channel lookup, and compiling -set fields and -where expressions.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ArgParseBenchmark extends FakeDevice {
+    private Properties update_fields;
+
+    @Override
+    int channelCount() {
+        return 1;
+    }
+
+    @Setup
+    public void setUpFields() {
+        update_fields = new Properties();
+        update_fields.setProperty("importance", "2");
+        update_fields.setProperty("lights", "true");
+        update_fields.setProperty("lightColor", "-16711936");
+        update_fields.setProperty("vibrationPattern", "[0,250,250,250]");
+        update_fields.setProperty("sound", "");
+    }
+
+    @Benchmark
+    public void getOneChannel() {
+        run("-pkg", PKG, "-id", "channel0", "-get");
+    }
+
+    @Benchmark
+    public ChannelPatch compilePatch() {
+        return ChannelPatch.compile(update_fields);
+    }
+
+    @Benchmark
+    public ChannelFilter compileFilter() {
+        return ChannelFilter.compile("importance>=3 && (group==null || !showBadge) && id!=\"channel0\"");
+    }
+}
@@ -0,0 +1,90 @@
+package io.github.nihilian.ncheditor;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Per-method call counts and latency histograms, safe to update from many threads. Latencies
+ * fall into power-of-two buckets, so percentiles are reported as a bucket's upper bound and
+ * are at most a factor of two high.
+ */
+final class CallStats {
+    private static final int BUCKETS = 64;
+
+    private static final class Method {
+        final AtomicLong calls = new AtomicLong();
+        final AtomicLong failures = new AtomicLong();
+        final AtomicLong maxNanos = new AtomicLong();
+        final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    }
+
+    private final ConcurrentHashMap<String, Method> methods = new ConcurrentHashMap<>();
+
+    void record(String name, long nanos, boolean failed) {
+        Method method = methods.get(name);
+        if (method == null) {
+            Method created = new Method();
+            method = methods.putIfAbsent(name, created);
+            if (method == null) {
+                method = created;
+            }
+        }
+        method.calls.incrementAndGet();
+        if (failed) {
+            method.failures.incrementAndGet();
+        }
+        method.buckets.incrementAndGet(bucket(nanos));
+        long max;
+        while (nanos > (max = method.maxNanos.get()) && !method.maxNanos.compareAndSet(max, nanos)) {
+        }
+    }
+
+    /**
+     * @return the number of failed calls over all methods so far
+     */
+    long failures() {
+        long failures = 0;
+        for (Method method : methods.values()) {
+            failures += method.failures.get();
+        }
+        return failures;
+    }
+
+    private static int bucket(long nanos) {
+        return nanos <= 0 ? 0 : Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(nanos));
+    }
+
+    private static long percentile(AtomicLongArray buckets, long calls, double fraction) {
+        long rank = (long) Math.ceil(calls * fraction);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank && seen > 0) {
+                return i == 0 ? 0 : 1L << i;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Prints one {@code method calls failures p50 p99 max} line per method, by name.
+     */
+    void print(PrintStream out) {
+        List<String> names = new ArrayList<>(methods.keySet());
+        Collections.sort(names);
+        out.println("method\tcalls\tfailures\tp50\tp99\tmax");
+        for (String name : names) {
+            Method method = methods.get(name);
+            long calls = method.calls.get();
+            out.println(name + "\t" + calls + "\t" + method.failures.get()
+                    + "\t" + Latency.formatNanos(percentile(method.buckets, calls, 0.5))
+                    + "\t" + Latency.formatNanos(percentile(method.buckets, calls, 0.99))
+                    + "\t" + Latency.formatNanos(method.maxNanos.get()));
+        }
+    }
+}
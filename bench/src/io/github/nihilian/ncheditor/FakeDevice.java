@@ -0,0 +1,58 @@
+package io.github.nihilian.ncheditor;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * A {@link FakeServices} device with one package of {@link #channelCount()} channels, installed
+ * as ncheditor's services. Writes are counted but not stored, so every invocation of a command
+ * finds the same state, and the tool's output is discarded.
+ */
+@State(Scope.Benchmark)
+public abstract class FakeDevice {
+    static final String PKG = "com.example.app";
+
+    FakeServices services;
+    private PrintStream stdout;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        services = new FakeServices().persistWrites(false);
+        services.addPackage(PKG);
+        services.addChannels(PKG, channelCount());
+        services.install();
+        stdout = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        }));
+    }
+
+    abstract int channelCount();
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.setOut(stdout);
+    }
+
+    /**
+     * Runs a command line, failing the benchmark if it does not succeed.
+     */
+    static void run(String... args) {
+        int status = Main.run(args);
+        if (status != 0) {
+            throw new IllegalStateException("exit status " + status + " for " + String.join(" ", args));
+        }
+    }
+}
@@ -0,0 +1,579 @@
+package io.github.nihilian.ncheditor;
+
+import android.app.INotificationManager;
+import android.app.NotificationChannel;
+import android.app.NotificationChannelGroup;
+import android.app.NotificationManager;
+
+import android.content.pm.ApplicationInfo;
+import android.content.pm.IPackageManager;
+import android.content.pm.PackageInfo;
+import android.content.pm.ParceledListSlice;
+
+import android.os.DeadObjectException;
+import android.os.Parcel;
+import android.os.RemoteException;
+import android.os.UserHandle;
+
+import android.service.notification.ConversationChannelWrapper;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory stand-in for the notification and package manager services, so ncheditor can run
+ * on a plain JVM. Only the methods ncheditor calls are implemented; any other method throws
+ * {@link UnsupportedOperationException}. Like binder, every call hands out and stores copies,
+ * so the tool never shares objects with the fake's state.
+ *
+ * <p>Packages are installed for every user with app ids counting up from
+ * {@link #FIRST_APP_ID}; the uid arguments of the notification manager are not checked.
+ *
+ * <p>For load testing, calls can be slowed down by a {@link Latency} per method, fail with a
+ * {@link RemoteException} or a {@link DeadObjectException} at a given rate, and writes can
+ * trigger a simulated save of the notification policy. Like the real service, the save
+ * happens in the background, coalesces the writes made in the meantime and blocks every call
+ * while it runs, for a time that grows with the number of channels on the device. Every call
+ * is recorded in {@link #stats()}.
+ */
+class FakeServices {
+    static final int FIRST_APP_ID = 10000;
+
+    static final class Package {
+        final String name;
+        final int appId;
+        long lastUpdateTime = 1;
+        boolean enabled = true;
+        boolean showBadge = true;
+        int bubblePreference = NotificationManager.BUBBLE_PREFERENCE_NONE;
+        // both in creation order, guarded by the package
+        final Map<String, NotificationChannel> channels = new LinkedHashMap<>();
+        final Map<String, NotificationChannelGroup> groups = new LinkedHashMap<>();
+
+        Package(String name, int appId) {
+            this.name = name;
+            this.appId = appId;
+        }
+    }
+
+    private static final String ANY_METHOD = "*";
+
+    private static final class Failure {
+        final double probability;
+        final boolean dead;
+
+        Failure(double probability, boolean dead) {
+            this.probability = probability;
+            this.dead = dead;
+        }
+    }
+
+    private final Map<String, Package> packages = new ConcurrentHashMap<>();
+    private final List<String> packageNames = new ArrayList<>();
+    private final AtomicLong writes = new AtomicLong();
+    private volatile boolean persistWrites = true;
+
+    private final Map<String, Latency> latencies = new ConcurrentHashMap<>();
+    private final Map<String, Failure> failures = new ConcurrentHashMap<>();
+    private volatile boolean dead;
+    private volatile Random random = new Random();
+    private final CallStats stats = new CallStats();
+
+    // calls share the lock, a policy save takes it exclusively
+    private final ReentrantReadWriteLock policyLock = new ReentrantReadWriteLock();
+    private final AtomicBoolean savePending = new AtomicBoolean();
+    private final AtomicLong saves = new AtomicLong();
+    private volatile long saveBaseNanos = -1;
+    private volatile long saveNanosPerChannel;
+    private volatile long saveDelayNanos;
+    private ScheduledExecutorService saver;
+
+    /**
+     * @param persistWrites false to count writes without storing them, so that repeated runs of
+     *                      the same command do the same amount of work
+     */
+    FakeServices persistWrites(boolean persistWrites) {
+        this.persistWrites = persistWrites;
+        return this;
+    }
+
+    /**
+     * @param method an interface method name, or "*" for every method without a latency of its own
+     */
+    FakeServices latency(String method, Latency latency) {
+        latencies.put(method, latency);
+        return this;
+    }
+
+    /**
+     * Makes a share of the calls to a method fail before they reach the fake's state. With
+     * {@code dead}, the first failure kills the service: from then on every call throws a
+     * {@link DeadObjectException} until {@link #revive()}.
+     *
+     * @param method an interface method name, or "*" for every method without a failure rate of
+     *               its own
+     */
+    FakeServices fail(String method, double probability, boolean dead) {
+        failures.put(method, new Failure(probability, dead));
+        return this;
+    }
+
+    void revive() {
+        dead = false;
+    }
+
+    /**
+     * Makes latencies and failures reproducible.
+     */
+    FakeServices seed(long seed) {
+        random = new Random(seed);
+        return this;
+    }
+
+    /**
+     * Simulates saving the notification policy after writes: {@code delayNanos} after a write,
+     * one save covering every write made so far blocks all calls for
+     * {@code baseNanos + nanosPerChannel * <channels on the device>}.
+     */
+    synchronized FakeServices persistence(long baseNanos, long nanosPerChannel, long delayNanos) {
+        saveBaseNanos = baseNanos;
+        saveNanosPerChannel = nanosPerChannel;
+        saveDelayNanos = delayNanos;
+        if (saver == null) {
+            saver = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "fake-policy-save");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return this;
+    }
+
+    CallStats stats() {
+        return stats;
+    }
+
+    /**
+     * @return the number of simulated policy saves so far
+     */
+    long saves() {
+        return saves.get();
+    }
+
+    synchronized Package addPackage(String name) {
+        Package pkg = new Package(name, FIRST_APP_ID + packageNames.size());
+        packages.put(name, pkg);
+        packageNames.add(name);
+        return pkg;
+    }
+
+    /**
+     * Adds {@code count} channels named {@code channel<n>} that are neither blockable nor in a
+     * group, as a system app's channels would be.
+     */
+    FakeServices addChannels(String name, int count) {
+        Package pkg = packages.get(name);
+        synchronized (pkg) {
+            for (int i = 0; i < count; i++) {
+                NotificationChannel channel = new NotificationChannel("channel" + i, "Channel " + i, NotificationManager.IMPORTANCE_DEFAULT);
+                channel.setDescription("Description of channel " + i);
+                pkg.channels.put(channel.getId(), channel);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * @return the number of channel, group and package setting writes received so far
+     */
+    long writes() {
+        return writes.get();
+    }
+
+    /**
+     * Makes ncheditor use this fake instead of the system services.
+     */
+    void install() {
+        Main.useServices(asInterface(INotificationManager.class, new NotificationManagerImpl()),
+                asInterface(IPackageManager.class, new PackageManagerImpl()));
+    }
+
+    /**
+     * Implements a service interface with the methods of the same name and parameter types
+     * found on {@code impl}.
+     */
+    private <T> T asInterface(Class<T> type, final Object impl) {
+        final Map<Method, Method> targets = new ConcurrentHashMap<>();
+        InvocationHandler handler = new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (method.getDeclaringClass() == Object.class) {
+                    return method.invoke(impl, args);
+                }
+                if (method.getName().equals("asBinder")) {
+                    return null;
+                }
+                Method target = targets.get(method);
+                if (target == null) {
+                    try {
+                        target = impl.getClass().getDeclaredMethod(method.getName(), method.getParameterTypes());
+                    } catch (NoSuchMethodException e) {
+                        throw new UnsupportedOperationException(impl.getClass().getSimpleName() + " does not implement " + method.getName());
+                    }
+                    target.setAccessible(true);
+                    targets.put(method, target);
+                }
+                String name = method.getName();
+                long start = System.nanoTime();
+                boolean failed = true;
+                policyLock.readLock().lock();
+                try {
+                    beforeCall(name);
+                    Object result;
+                    try {
+                        result = target.invoke(impl, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                    failed = false;
+                    return result;
+                } finally {
+                    policyLock.readLock().unlock();
+                    stats.record(name, System.nanoTime() - start, failed);
+                }
+            }
+        };
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, handler));
+    }
+
+    private void beforeCall(String method) throws RemoteException {
+        if (dead) {
+            throw new DeadObjectException();
+        }
+        Latency latency = latencies.get(method);
+        if (latency == null) {
+            latency = latencies.get(ANY_METHOD);
+        }
+        if (latency != null) {
+            long nanos = latency.sampleNanos(random);
+            if (nanos > 0) {
+                LockSupport.parkNanos(nanos);
+            }
+        }
+        Failure failure = failures.get(method);
+        if (failure == null) {
+            failure = failures.get(ANY_METHOD);
+        }
+        if (failure != null && random.nextDouble() < failure.probability) {
+            if (failure.dead) {
+                dead = true;
+                throw new DeadObjectException();
+            }
+            throw new RemoteException("injected failure in " + method);
+        }
+    }
+
+    /**
+     * Schedules a policy save unless one is already pending, which then covers this write too.
+     */
+    private void scheduleSave() {
+        if (saveBaseNanos < 0 || !savePending.compareAndSet(false, true)) {
+            return;
+        }
+        saver.schedule(new Runnable() {
+            @Override
+            public void run() {
+                policyLock.writeLock().lock();
+                try {
+                    savePending.set(false);
+                    long channels = 0;
+                    for (Package pkg : packages.values()) {
+                        synchronized (pkg) {
+                            channels += pkg.channels.size();
+                        }
+                    }
+                    LockSupport.parkNanos(saveBaseNanos + saveNanosPerChannel * channels);
+                    saves.incrementAndGet();
+                } finally {
+                    policyLock.writeLock().unlock();
+                }
+            }
+        }, saveDelayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private synchronized List<String> packageNames() {
+        return new ArrayList<>(packageNames);
+    }
+
+    private Package getPackage(String name) {
+        Package pkg = packages.get(name);
+        if (pkg == null) {
+            throw new IllegalArgumentException("package " + name + " is not installed");
+        }
+        return pkg;
+    }
+
+    static NotificationChannel copy(NotificationChannel channel) {
+        // the same round trip binder makes, through the replacement Parcel in bench/shadow
+        Parcel parcel = Parcel.obtain();
+        try {
+            channel.writeToParcel(parcel, 0);
+            parcel.setDataPosition(0);
+            return NotificationChannel.CREATOR.createFromParcel(parcel);
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    private static NotificationChannelGroup copy(NotificationChannelGroup group, List<NotificationChannel> channels) {
+        NotificationChannelGroup copy = group.clone();
+        copy.setChannels(channels);
+        return copy;
+    }
+
+    private void write() {
+        writes.incrementAndGet();
+        scheduleSave();
+    }
+
+    private final class NotificationManagerImpl {
+        ParceledListSlice<NotificationChannel> getNotificationChannelsForPackage(String name, int uid, boolean includeDeleted) {
+            Package pkg = getPackage(name);
+            List<NotificationChannel> list = new ArrayList<>();
+            synchronized (pkg) {
+                for (NotificationChannel channel : pkg.channels.values()) {
+                    if (includeDeleted || !channel.isDeleted()) {
+                        list.add(copy(channel));
+                    }
+                }
+            }
+            return new ParceledListSlice<>(list);
+        }
+
+        NotificationChannel getNotificationChannel(String callingPkg, int userId, String name, String channelId) {
+            Package pkg = getPackage(name);
+            synchronized (pkg) {
+                NotificationChannel channel = pkg.channels.get(channelId);
+                return channel != null ? copy(channel) : null;
+            }
+        }
+
+        int getNumNotificationChannelsForPackage(String name, int uid, boolean includeDeleted) {
+            Package pkg = getPackage(name);
+            synchronized (pkg) {
+                int count = 0;
+                for (NotificationChannel channel : pkg.channels.values()) {
+                    if (includeDeleted || !channel.isDeleted()) {
+                        count++;
+                    }
+                }
+                return count;
+            }
+        }
+
+        int getDeletedChannelCount(String name, int uid) {
+            return getNumNotificationChannelsForPackage(name, uid, true) - getNumNotificationChannelsForPackage(name, uid, false);
+        }
+
+        int getBlockedChannelCount(String name, int uid) {
+            Package pkg = getPackage(name);
+            synchronized (pkg) {
+                int count = 0;
+                for (NotificationChannel channel : pkg.channels.values()) {
+                    if (!channel.isDeleted() && channel.getImportance() == NotificationManager.IMPORTANCE_NONE) {
+                        count++;
+                    }
+                }
+                return count;
+            }
+        }
+
+        void updateNotificationChannelForPackage(String name, int uid, NotificationChannel channel) {
+            Package pkg = getPackage(name);
+            synchronized (pkg) {
+                if (!pkg.channels.containsKey(channel.getId())) {
+                    throw new IllegalArgumentException("Channel does not exist");
+                }
+                write();
+                if (persistWrites) {
+                    pkg.channels.put(channel.getId(), copy(channel));
+                }
+            }
+        }
+
+        void createNotificationChannelsForPackage(String name, int uid, ParceledListSlice<NotificationChannel> channelsList) {
+            Package pkg = getPackage(name);
+            synchronized (pkg) {
+                write();
+                if (persistWrites) {
+                    for (NotificationChannel channel : channelsList.getList()) {
+                        if (!pkg.channels.containsKey(channel.getId())) {
+                            pkg.channels.put(channel.getId(), copy(channel));
+                        }
+                    }
+                }
+            }
+        }
+
+        private List<NotificationChannel> channelsOf(Package pkg, String groupId, boolean includeDeleted) {
+            List<NotificationChannel> channels = new ArrayList<>();
+            for (NotificationChannel channel : pkg.channels.values()) {
+                if (groupId.equals(channel.getGroup()) && (includeDeleted || !channel.isDeleted())) {
+                    channels.add(copy(channel));
+                }
+            }
+            return channels;
+        }
+
+        ParceledListSlice<NotificationChannelGroup> getNotificationChannelGroupsForPackage(String name, int uid, boolean includeDeleted) {
+            Package pkg = getPackage(name);
+            List<NotificationChannelGroup> list = new ArrayList<>();
+            synchronized (pkg) {
+                for (NotificationChannelGroup group : pkg.groups.values()) {
+                    list.add(copy(group, channelsOf(pkg, group.getId(), includeDeleted)));
+                }
+            }
+            return new ParceledListSlice<>(list);
+        }
+
+        NotificationChannelGroup getNotificationChannelGroupForPackage(String groupId, String name, int uid) {
+            Package pkg = getPackage(name);
+            synchronized (pkg) {
+                NotificationChannelGroup group = pkg.groups.get(groupId);
+                return group != null ? copy(group, new ArrayList<NotificationChannel>()) : null;
+            }
+        }
+
+        NotificationChannelGroup getPopulatedNotificationChannelGroupForPackage(String name, int uid, String groupId, boolean includeDeleted) {
+            Package pkg = getPackage(name);
+            synchronized (pkg) {
+                NotificationChannelGroup group = pkg.groups.get(groupId);
+                return group != null ? copy(group, channelsOf(pkg, groupId, includeDeleted)) : null;
+            }
+        }
+
+        void updateNotificationChannelGroupForPackage(String name, int uid, NotificationChannelGroup group) {
+            Package pkg = getPackage(name);
+            synchronized (pkg) {
+                write();
+                if (persistWrites) {
+                    pkg.groups.put(group.getId(), copy(group, new ArrayList<NotificationChannel>()));
+                }
+            }
+        }
+
+        ParceledListSlice<ConversationChannelWrapper> getConversations(boolean onlyImportant) {
+            List<ConversationChannelWrapper> list = new ArrayList<>();
+            for (String name : packageNames()) {
+                Package pkg = getPackage(name);
+                list.addAll(conversationsOf(pkg, UserHandle.getUid(UserHandle.USER_SYSTEM, pkg.appId), onlyImportant));
+            }
+            return new ParceledListSlice<>(list);
+        }
+
+        ParceledListSlice<ConversationChannelWrapper> getConversationsForPackage(String name, int uid) {
+            return new ParceledListSlice<>(conversationsOf(getPackage(name), uid, false));
+        }
+
+        private List<ConversationChannelWrapper> conversationsOf(Package pkg, int uid, boolean onlyImportant) {
+            List<ConversationChannelWrapper> list = new ArrayList<>();
+            synchronized (pkg) {
+                for (NotificationChannel channel : pkg.channels.values()) {
+                    if (channel.getConversationId() == null || channel.isDeleted() || (onlyImportant && !channel.isImportantConversation())) {
+                        continue;
+                    }
+                    ConversationChannelWrapper conversation = new ConversationChannelWrapper();
+                    conversation.setNotificationChannel(copy(channel));
+                    conversation.setPkg(pkg.name);
+                    conversation.setUid(uid);
+                    list.add(conversation);
+                }
+            }
+            return list;
+        }
+
+        boolean areNotificationsEnabledForPackage(String name, int uid) {
+            return getPackage(name).enabled;
+        }
+
+        void setNotificationsEnabledForPackage(String name, int uid, boolean enabled) {
+            write();
+            if (persistWrites) {
+                getPackage(name).enabled = enabled;
+            }
+        }
+
+        void setNotificationsEnabledWithImportanceLockForPackage(String name, int uid, boolean enabled) {
+            setNotificationsEnabledForPackage(name, uid, enabled);
+        }
+
+        boolean canShowBadge(String name, int uid) {
+            return getPackage(name).showBadge;
+        }
+
+        void setShowBadge(String name, int uid, boolean showBadge) {
+            write();
+            if (persistWrites) {
+                getPackage(name).showBadge = showBadge;
+            }
+        }
+
+        int getBubblePreferenceForPackage(String name, int uid) {
+            return getPackage(name).bubblePreference;
+        }
+
+        void setBubblesAllowed(String name, int uid, int bubblePreference) {
+            write();
+            if (persistWrites) {
+                getPackage(name).bubblePreference = bubblePreference;
+            }
+        }
+    }
+
+    private final class PackageManagerImpl {
+        List<String> getAllPackages() {
+            return packageNames();
+        }
+
+        PackageInfo getPackageInfo(String name, long flags, int userId) {
+            Package pkg = packages.get(name);
+            if (pkg == null) {
+                return null;
+            }
+            PackageInfo info = new PackageInfo();
+            info.packageName = pkg.name;
+            info.lastUpdateTime = pkg.lastUpdateTime;
+            info.setLongVersionCode(1);
+            info.applicationInfo = new ApplicationInfo();
+            info.applicationInfo.packageName = pkg.name;
+            info.applicationInfo.uid = UserHandle.getUid(userId, pkg.appId);
+            return info;
+        }
+
+        String[] getNamesForUids(int[] uids) {
+            String[] names = new String[uids.length];
+            synchronized (FakeServices.this) {
+                for (int i = 0; i < uids.length; i++) {
+                    int index = UserHandle.getAppId(uids[i]) - FIRST_APP_ID;
+                    names[i] = index >= 0 && index < packageNames.size() ? packageNames.get(index) : null;
+                }
+            }
+            return names;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package io.github.nihilian.ncheditor;
+
+import java.util.Random;
+
+/**
+ * A distribution of service call latencies for {@link FakeServices}. Specs are written as
+ * <pre>
+ * 0                     no delay
+ * 2ms                   fixed
+ * uniform:100us-2ms     uniform between two bounds
+ * lognormal:300us,0.8   log-normal with the given median and sigma, for a long tail
+ * </pre>
+ * Durations take an {@code ns}, {@code us}, {@code ms} or {@code s} suffix.
+ */
+abstract class Latency {
+    static final Latency NONE = fixed(0);
+
+    abstract long sampleNanos(Random random);
+
+    static Latency fixed(final long nanos) {
+        return new Latency() {
+            @Override
+            long sampleNanos(Random random) {
+                return nanos;
+            }
+
+            @Override
+            public String toString() {
+                return formatNanos(nanos);
+            }
+        };
+    }
+
+    static Latency uniform(final long minNanos, final long maxNanos) {
+        if (maxNanos < minNanos) {
+            throw new IllegalArgumentException("uniform latency: " + formatNanos(maxNanos) + " is below " + formatNanos(minNanos));
+        }
+        return new Latency() {
+            @Override
+            long sampleNanos(Random random) {
+                return minNanos + (long) (random.nextDouble() * (maxNanos - minNanos));
+            }
+
+            @Override
+            public String toString() {
+                return "uniform:" + formatNanos(minNanos) + "-" + formatNanos(maxNanos);
+            }
+        };
+    }
+
+    static Latency logNormal(final long medianNanos, final double sigma) {
+        return new Latency() {
+            @Override
+            long sampleNanos(Random random) {
+                return (long) (medianNanos * Math.exp(sigma * random.nextGaussian()));
+            }
+
+            @Override
+            public String toString() {
+                return "lognormal:" + formatNanos(medianNanos) + "," + sigma;
+            }
+        };
+    }
+
+    /**
+     * @throws IllegalArgumentException for malformed specs
+     */
+    static Latency parse(String spec) {
+        int colon = spec.indexOf(':');
+        if (colon < 0) {
+            return fixed(parseNanos(spec));
+        }
+        String kind = spec.substring(0, colon);
+        String args = spec.substring(colon + 1);
+        switch (kind) {
+            case "uniform": {
+                int dash = args.indexOf('-');
+                if (dash < 0) {
+                    throw new IllegalArgumentException("expected uniform:<min>-<max>, found \"" + spec + "\"");
+                }
+                return uniform(parseNanos(args.substring(0, dash)), parseNanos(args.substring(dash + 1)));
+            }
+            case "lognormal": {
+                int comma = args.indexOf(',');
+                if (comma < 0) {
+                    throw new IllegalArgumentException("expected lognormal:<median>,<sigma>, found \"" + spec + "\"");
+                }
+                return logNormal(parseNanos(args.substring(0, comma)), Double.parseDouble(args.substring(comma + 1)));
+            }
+            default:
+                throw new IllegalArgumentException("unknown latency distribution \"" + kind + "\", expected uniform or lognormal");
+        }
+    }
+
+    /**
+     * @return the duration in nanoseconds, e.g. 1500 for "1.5us"; a bare number is nanoseconds
+     */
+    static long parseNanos(String duration) {
+        String value = duration.trim();
+        long unit = 1;
+        if (value.endsWith("ns")) {
+            value = value.substring(0, value.length() - 2);
+        } else if (value.endsWith("us")) {
+            value = value.substring(0, value.length() - 2);
+            unit = 1000L;
+        } else if (value.endsWith("ms")) {
+            value = value.substring(0, value.length() - 2);
+            unit = 1000L * 1000;
+        } else if (value.endsWith("s")) {
+            value = value.substring(0, value.length() - 1);
+            unit = 1000L * 1000 * 1000;
+        }
+        try {
+            double nanos = Double.parseDouble(value) * unit;
+            if (nanos < 0) {
+                throw new IllegalArgumentException("negative duration \"" + duration + "\"");
+            }
+            return (long) nanos;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("expected a duration such as 250us or 2ms, found \"" + duration + "\"");
+        }
+    }
+
+    static String formatNanos(long nanos) {
+        if (nanos >= 1000L * 1000 * 1000) {
+            return String.format("%.2fs", nanos / 1e9);
+        } else if (nanos >= 1000L * 1000) {
+            return String.format("%.2fms", nanos / 1e6);
+        } else if (nanos >= 1000L) {
+            return String.format("%.1fus", nanos / 1e3);
+        }
+        return nanos + "ns";
+    }
+}
@@ -0,0 +1,54 @@
+package io.github.nihilian.ncheditor;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@code -pkg <package> -get} in each output format, including the fetch from the fake.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ListingBenchmark extends FakeDevice {
+
+    @Param({"10", "1000", "100000"})
+    public int channels;
+
+    @Override
+    int channelCount() {
+        return channels;
+    }
+
+    @Param({"text", "json", "columns"})
+    public String format;
+
+    @Benchmark
+    public void list() {
+        switch (format) {
+            case "json":
+                run("-pkg", PKG, "-get", "-json");
+                break;
+            case "columns":
+                run("-pkg", PKG, "-get", "-columns", "pkg,id,importance,group,blockableSystem");
+                break;
+            default:
+                run("-pkg", PKG, "-get");
+                break;
+        }
+    }
+
+    @Benchmark
+    public void listFiltered() {
+        run("-pkg", PKG, "-get", "-json", "-where", "importance>=3 && !blockableSystem");
+    }
+}
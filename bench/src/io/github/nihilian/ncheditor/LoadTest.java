@@ -0,0 +1,219 @@
+package io.github.nihilian.ncheditor;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+
+/**
+ * Runs an ncheditor command repeatedly against a {@link FakeServices} device with injected
+ * latencies, failures and policy saves, then prints the command's run time percentiles and the
+ * fake's per-method call statistics. For example, 500 packages of 200 channels each, slow
+ * channel list fetches and 1% failed writes:
+ * <pre>
+ * ./bench.sh -loadtest -packages 500 -channels 200 -latency 'lognormal:200us,0.6' \
+ *     -latency 'getNotificationChannelsForPackage=lognormal:2ms,0.8' \
+ *     -fail updateNotificationChannelForPackage=0.01 -persist 5ms,2us,1ms \
+ *     -- -pkg '*' -id '*' -set importance=2
+ * </pre>
+ */
+public final class LoadTest {
+    private static final String PROG = "loadtest";
+
+    private LoadTest() {}
+
+    public static void main(String[] args) {
+        int status = run(args);
+        if (status != 0) {
+            System.exit(status);
+        }
+    }
+
+    static int run(String[] args) {
+        Option packagesOpt = Option.builder("packages")
+                                   .argName("count")
+                                   .hasArg(true)
+                                   .desc("Number of installed packages, com.example.app<n> (default 100)")
+                                   .type(Number.class)
+                                   .build();
+
+        Option channelsOpt = Option.builder("channels")
+                                   .argName("count")
+                                   .hasArg(true)
+                                   .desc("Number of channels per package (default 50)")
+                                   .type(Number.class)
+                                   .build();
+
+        Option runsOpt = Option.builder("runs")
+                               .argName("count")
+                               .hasArg(true)
+                               .desc("How often to run the command (default 10)")
+                               .type(Number.class)
+                               .build();
+
+        Option latencyOpt = Option.builder("latency")
+                                  .argName("[method=]spec")
+                                  .hasArg(true)
+                                  .desc("Latency of every call, or of one method, e.g. 2ms, uniform:100us-2ms or lognormal:300us,0.8; may be repeated")
+                                  .build();
+
+        Option failOpt = Option.builder("fail")
+                               .argName("[method=]probability[:dead]")
+                               .hasArg(true)
+                               .desc("Share of the calls that throw a RemoteException, or with :dead a DeadObjectException that kills the service for the rest of the run; may be repeated")
+                               .build();
+
+        Option persistOpt = Option.builder("persist")
+                                  .argName("base,perChannel,delay")
+                                  .hasArg(true)
+                                  .desc("Simulate policy saves after writes, e.g. 5ms,2us,1ms")
+                                  .build();
+
+        Option seedOpt = Option.builder("seed")
+                               .argName("seed")
+                               .hasArg(true)
+                               .desc("Seed for latencies and failures")
+                               .type(Number.class)
+                               .build();
+
+        Option verboseFlag = Option.builder("verbose")
+                                   .hasArg(false)
+                                   .desc("Show the command's own output")
+                                   .build();
+
+        Options options = new Options().addOption(packagesOpt)
+                                       .addOption(channelsOpt)
+                                       .addOption(runsOpt)
+                                       .addOption(latencyOpt)
+                                       .addOption(failOpt)
+                                       .addOption(persistOpt)
+                                       .addOption(seedOpt)
+                                       .addOption(verboseFlag);
+
+        CommandLineParser parser = new DefaultParser();
+        try {
+            CommandLine line = parser.parse(options, args, true);
+            String[] command = line.getArgs();
+            if (command.length == 0) {
+                new HelpFormatter().printHelp(PROG + " [options] -- <ncheditor args>", options);
+                return 1;
+            }
+            Number packages = (Number) line.getParsedOptionValue(packagesOpt.getOpt());
+            Number channels = (Number) line.getParsedOptionValue(channelsOpt.getOpt());
+            Number runs = (Number) line.getParsedOptionValue(runsOpt.getOpt());
+            Number seed = (Number) line.getParsedOptionValue(seedOpt.getOpt());
+
+            int packageCount = packages != null ? packages.intValue() : 100;
+            int channelCount = channels != null ? channels.intValue() : 50;
+            int runCount = runs != null ? runs.intValue() : 10;
+            if (packageCount < 0 || channelCount < 0 || runCount < 1) {
+                System.err.println("Invalid arg: " + packagesOpt.getOpt() + " and " + channelsOpt.getOpt() + " must not be negative, " + runsOpt.getOpt() + " must be at least 1");
+                return 1;
+            }
+
+            FakeServices services = new FakeServices();
+            for (int i = 0; i < packageCount; i++) {
+                services.addPackage("com.example.app" + i);
+                services.addChannels("com.example.app" + i, channelCount);
+            }
+            if (seed != null) {
+                services.seed(seed.longValue());
+            }
+            if (line.hasOption(latencyOpt.getOpt())) {
+                for (String value : line.getOptionValues(latencyOpt.getOpt())) {
+                    int separator = value.indexOf('=');
+                    services.latency(separator < 0 ? "*" : value.substring(0, separator), Latency.parse(value.substring(separator + 1)));
+                }
+            }
+            if (line.hasOption(failOpt.getOpt())) {
+                for (String value : line.getOptionValues(failOpt.getOpt())) {
+                    int separator = value.indexOf('=');
+                    String failure = value.substring(separator + 1);
+                    boolean dead = failure.endsWith(":dead");
+                    if (dead) {
+                        failure = failure.substring(0, failure.length() - ":dead".length());
+                    }
+                    services.fail(separator < 0 ? "*" : value.substring(0, separator), parseProbability(failure), dead);
+                }
+            }
+            if (line.hasOption(persistOpt.getOpt())) {
+                String[] parts = line.getOptionValue(persistOpt.getOpt()).split(",");
+                if (parts.length != 3) {
+                    System.err.println("Invalid arg: " + persistOpt.getOpt() + " expects <base>,<perChannel>,<delay>");
+                    return 1;
+                }
+                services.persistence(Latency.parseNanos(parts[0]), Latency.parseNanos(parts[1]), Latency.parseNanos(parts[2]));
+            }
+            services.install();
+
+            PrintStream stdout = System.out;
+            if (!line.hasOption(verboseFlag.getOpt())) {
+                System.setOut(new PrintStream(new OutputStream() {
+                    @Override
+                    public void write(int b) {
+                    }
+
+                    @Override
+                    public void write(byte[] b, int off, int len) {
+                    }
+                }));
+            }
+            long[] durations = new long[runCount];
+            int failed = 0;
+            long start = System.nanoTime();
+            try {
+                for (int i = 0; i < runCount; i++) {
+                    // a dead service comes back for the next run, as after a system_server restart
+                    services.revive();
+                    long failuresBefore = services.stats().failures();
+                    long runStart = System.nanoTime();
+                    int status = Main.run(command);
+                    // a run counts as failed if any call failed, even one the command recovered from
+                    if (status != 0 || services.stats().failures() != failuresBefore) {
+                        failed++;
+                    }
+                    durations[i] = System.nanoTime() - runStart;
+                }
+            } finally {
+                System.setOut(stdout);
+            }
+            long total = System.nanoTime() - start;
+
+            Arrays.sort(durations);
+            System.out.println("runs=" + runCount + " failed=" + failed + " total=" + Latency.formatNanos(total)
+                    + " p50=" + Latency.formatNanos(durations[(runCount - 1) / 2])
+                    + " p99=" + Latency.formatNanos(durations[(int) Math.ceil(runCount * 0.99) - 1])
+                    + " max=" + Latency.formatNanos(durations[runCount - 1]));
+            System.out.println("writes=" + services.writes() + " saves=" + services.saves());
+            services.stats().print(System.out);
+        } catch (ParseException e) {
+            System.err.println("Parsing error, message:");
+            System.err.println(e.getMessage());
+            return 1;
+        } catch (IllegalArgumentException e) {
+            System.err.println("ERROR: " + e.getMessage());
+            return 1;
+        }
+        return 0;
+    }
+
+    private static double parseProbability(String value) {
+        double probability;
+        try {
+            probability = Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("expected a probability between 0 and 1, found \"" + value + "\"");
+        }
+        if (probability < 0 || probability > 1) {
+            throw new IllegalArgumentException("expected a probability between 0 and 1, found \"" + value + "\"");
+        }
+        return probability;
+    }
+}
@@ -0,0 +1,70 @@
+package io.github.nihilian.ncheditor;
+
+import android.app.NotificationChannel;
+
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * {@code -set} on every channel of the package, end to end and as bare {@link ChannelPatch}
+ * applications to channels already in memory.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SetBenchmark extends FakeDevice {
+    @Param({"10", "1000", "100000"})
+    public int channels;
+
+    @Override
+    int channelCount() {
+        return channels;
+    }
+
+    private List<NotificationChannel> list;
+    private ChannelPatch[] patches;
+    private int next;
+
+    @Setup
+    public void setUpPatches() throws Exception {
+        list = Main.getNotificationManagerService().getNotificationChannelsForPackage(PKG, Main.getPackageUid(PKG), false).getList();
+        // alternating between two patches makes every application change every channel
+        patches = new ChannelPatch[2];
+        for (int i = 0; i < patches.length; i++) {
+            Properties update_fields = new Properties();
+            update_fields.setProperty("importance", Integer.toString(2 + i));
+            update_fields.setProperty("showBadge", Boolean.toString(i == 0));
+            patches[i] = ChannelPatch.compile(update_fields);
+        }
+    }
+
+    /**
+     * Every channel differs from the fake's stored state, so every channel is written.
+     */
+    @Benchmark
+    public void setAllChannels() {
+        run("-pkg", PKG, "-id", "*", "-set", "importance=2", "showBadge=false");
+    }
+
+    @Benchmark
+    public void applyPatch(Blackhole blackhole) {
+        ChannelPatch patch = patches[next++ & 1];
+        for (NotificationChannel channel : list) {
+            blackhole.consume(patch.apply(channel));
+        }
+    }
+}
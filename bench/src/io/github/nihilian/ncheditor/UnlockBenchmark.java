@@ -0,0 +1,37 @@
+package io.github.nihilian.ncheditor;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@code -unlock}: fetch, capture, {@code setBlockable(true)} and one write per channel. The fake
+ * drops the writes, so every invocation unlocks every channel again.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UnlockBenchmark extends FakeDevice {
+
+    @Param({"10", "1000", "100000"})
+    public int channels;
+
+    @Override
+    int channelCount() {
+        return channels;
+    }
+
+    @Benchmark
+    public void unlock() {
+        run("-pkg", PKG, "-unlock");
+    }
+}
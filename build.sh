@@ -51,7 +51,7 @@ cd ..
 echo "Compiling to DEX..."
 d8 --classpath "$ANDROID_JAR" --output "$BUILD_DIR/$PROJECT.jar" \
     "lib/commons-cli-1.8.0.jar" \
-    "$CLASSES_DIR/io/github/nihilian/ncheditor/Main.class"
+    "$CLASSES_DIR"/io/github/nihilian/ncheditor/*.class
 
 echo "Generating script executable..."
 echo '#!/system/bin/sh' > "$BUILD_DIR/$PROJECT"
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.service.notification;
+
+import android.app.NotificationChannel;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+
+/**
+ * @hide
+ */
+public final class ConversationChannelWrapper implements Parcelable {
+
+    public ConversationChannelWrapper() {
+        throw new RuntimeException("Stub");
+    }
+
+    protected ConversationChannelWrapper(Parcel in) {
+        throw new RuntimeException("Stub");
+    }
+
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        throw new RuntimeException("Stub");
+    }
+
+    @Override
+    public int describeContents() {
+        throw new RuntimeException("Stub");
+    }
+
+    public static final Creator<ConversationChannelWrapper> CREATOR = new Creator<ConversationChannelWrapper>() {
+        @Override
+        public ConversationChannelWrapper createFromParcel(Parcel in) {
+            throw new RuntimeException("Stub");
+        }
+
+        @Override
+        public ConversationChannelWrapper[] newArray(int size) {
+            throw new RuntimeException("Stub");
+        }
+    };
+
+    public NotificationChannel getNotificationChannel() {
+        throw new RuntimeException("Stub");
+    }
+
+    public void setNotificationChannel(NotificationChannel notificationChannel) {
+        throw new RuntimeException("Stub");
+    }
+
+    public CharSequence getGroupLabel() {
+        throw new RuntimeException("Stub");
+    }
+
+    public void setGroupLabel(CharSequence groupLabel) {
+        throw new RuntimeException("Stub");
+    }
+
+    public CharSequence getParentChannelLabel() {
+        throw new RuntimeException("Stub");
+    }
+
+    public void setParentChannelLabel(CharSequence parentChannelLabel) {
+        throw new RuntimeException("Stub");
+    }
+
+    public String getPkg() {
+        throw new RuntimeException("Stub");
+    }
+
+    public void setPkg(String pkg) {
+        throw new RuntimeException("Stub");
+    }
+
+    public int getUid() {
+        throw new RuntimeException("Stub");
+    }
+
+    public void setUid(int uid) {
+        throw new RuntimeException("Stub");
+    }
+}
@@ -0,0 +1,30 @@
+package android.util;
+
+import com.android.modules.utils.TypedXmlPullParser;
+import com.android.modules.utils.TypedXmlSerializer;
+
+/**
+ * XML utility methods.
+ */
+public class Xml {
+
+    /**
+     * Creates a new {@link TypedXmlPullParser} which is optimized for use
+     * inside the system, typically by supporting only a basic set of features.
+     *
+     * @hide
+     */
+    public static TypedXmlPullParser newFastPullParser() {
+        throw new RuntimeException("Stub");
+    }
+
+    /**
+     * Creates a new {@link TypedXmlSerializer} which is optimized for use
+     * inside the system, typically by supporting only a basic set of features.
+     *
+     * @hide
+     */
+    public static TypedXmlSerializer newFastSerializer() {
+        throw new RuntimeException("Stub");
+    }
+}
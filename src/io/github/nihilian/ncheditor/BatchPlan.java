@@ -0,0 +1,139 @@
+package io.github.nihilian.ncheditor;
+
+import android.app.INotificationManager;
+import android.app.NotificationChannel;
+
+import android.os.RemoteException;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * A plan file for {@code -apply}: one {@code <package> <channel_id> key=value ...} line per
+ * channel, using the same keys as {@code -set}. Lines are grouped by package so that each
+ * package costs one UID lookup, one channel list fetch and one update per channel that
+ * actually changes. A package's updates form one {@link ChannelTransaction}, so a failed
+ * write puts back the channels already changed in that package.
+ */
+final class BatchPlan {
+    // package -> channel id -> merged update fields, both in order of first appearance
+    private final Map<String, Map<String, Properties>> packages = new LinkedHashMap<>();
+
+    private BatchPlan() {}
+
+    /**
+     * @param path plan file, or "-" to read the plan from stdin
+     */
+    static BatchPlan parse(String path) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(Main.openInput(path), StandardCharsets.UTF_8))) {
+            BatchPlan plan = new BatchPlan();
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                plan.addLine(path, lineNumber, CommandServer.tokenize(line));
+            }
+            return plan;
+        }
+    }
+
+    private void addLine(String path, int lineNumber, List<String> tokens) {
+        if (tokens.size() < 3) {
+            throw new IllegalArgumentException(path + ":" + lineNumber + ": expected <package> <channel_id> key=value ...");
+        }
+        Map<String, Properties> channels = packages.get(tokens.get(0));
+        if (channels == null) {
+            channels = new LinkedHashMap<>();
+            packages.put(tokens.get(0), channels);
+        }
+        Properties update_fields = channels.get(tokens.get(1));
+        if (update_fields == null) {
+            update_fields = new Properties();
+            channels.put(tokens.get(1), update_fields);
+        }
+        for (String field : tokens.subList(2, tokens.size())) {
+            int separator = field.indexOf('=');
+            if (separator <= 0) {
+                throw new IllegalArgumentException(path + ":" + lineNumber + ": expected key=value, found \"" + field + "\"");
+            }
+            update_fields.setProperty(field.substring(0, separator), field.substring(separator + 1));
+        }
+    }
+
+    /**
+     * @return false if any package or channel could not be updated
+     */
+    boolean execute() {
+        final INotificationManager notificationManager = Main.getNotificationManagerService();
+        boolean success = true;
+        int updated = 0;
+        int unchanged = 0;
+        for (Map.Entry<String, Map<String, Properties>> entry : packages.entrySet()) {
+            final String pkg = entry.getKey();
+            final Map<String, Properties> changes = entry.getValue();
+            try {
+                int uid = Main.getPackageUid(pkg);
+                if (uid < 0) {
+                    System.err.println("ERROR: package not found: \"" + pkg + "\"");
+                    success = false;
+                    continue;
+                }
+                List<NotificationChannel> list = notificationManager.getNotificationChannelsForPackage(pkg, uid, false).getList();
+                final Map<String, NotificationChannel> channels = new HashMap<>(list.size() * 2);
+                for (NotificationChannel channel : list) {
+                    channels.put(channel.getId(), channel);
+                }
+                // updated, unchanged, failed channels of this package
+                int[] counts = ChannelTransaction.run(notificationManager, pkg, uid, transaction -> {
+                    int[] packageCounts = new int[3];
+                    for (Map.Entry<String, Properties> change : changes.entrySet()) {
+                        NotificationChannel channel = channels.get(change.getKey());
+                        if (channel == null) {
+                            System.err.println("ERROR: channel not found: pkg=\"" + pkg + "\" channelId=\"" + change.getKey() + "\"");
+                            packageCounts[2]++;
+                            continue;
+                        }
+                        transaction.capture(channel);
+                        List<String> changed;
+                        try {
+                            changed = ChannelPatch.compile(change.getValue()).apply(channel);
+                        } catch (IllegalArgumentException e) {
+                            System.err.println("ERROR: pkg=\"" + pkg + "\" channelId=\"" + change.getKey() + "\": " + e.getMessage());
+                            packageCounts[2]++;
+                            continue;
+                        }
+                        if (changed.isEmpty()) {
+                            packageCounts[1]++;
+                            continue;
+                        }
+                        transaction.update(channel);
+                        System.out.println(IpcPlan.label("Updated: pkg=\"" + pkg + "\" channelId=\"" + channel.getId() + "\" fields=" + String.join(",", changed)));
+                        packageCounts[0]++;
+                    }
+                    return packageCounts;
+                });
+                updated += counts[0];
+                unchanged += counts[1];
+                if (counts[2] > 0) {
+                    success = false;
+                }
+            } catch (RemoteException e) {
+                e.printStackTrace();
+                success = false;
+            }
+        }
+        System.out.println(IpcPlan.label("Updated " + updated + " Notification Channel(s) in " + packages.size() + " package(s), " + unchanged + " already up to date"));
+        return success;
+    }
+}
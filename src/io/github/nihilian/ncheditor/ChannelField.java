@@ -0,0 +1,416 @@
+package io.github.nihilian.ncheditor;
+
+import android.app.NotificationChannel;
+
+import android.net.Uri;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * The Notification Channel fields that can be changed with {@code -set}, in the order they are
+ * applied. Each field knows how to parse its {@code update_fields} value and how to read and
+ * write it on a {@link NotificationChannel}, so callers can compare before writing.
+ */
+enum ChannelField {
+    NAME("name", Type.STRING) {
+        @Override
+        Object read(NotificationChannel channel) {
+            return channel.getName() != null ? channel.getName().toString() : null;
+        }
+
+        @Override
+        void write(NotificationChannel channel, Object value) {
+            channel.setName((String) value);
+        }
+    },
+    DESCRIPTION("description", Type.STRING) {
+        @Override
+        Object read(NotificationChannel channel) {
+            return channel.getDescription();
+        }
+
+        @Override
+        void write(NotificationChannel channel, Object value) {
+            channel.setDescription((String) value);
+        }
+    },
+    IMPORTANCE("importance", Type.INT) {
+        @Override
+        Object read(NotificationChannel channel) {
+            return channel.getImportance();
+        }
+
+        @Override
+        void write(NotificationChannel channel, Object value) {
+            channel.setImportance((Integer) value);
+        }
+    },
+    BYPASS_DND("bypassDnd", Type.BOOLEAN) {
+        @Override
+        Object read(NotificationChannel channel) {
+            return channel.canBypassDnd();
+        }
+
+        @Override
+        void write(NotificationChannel channel, Object value) {
+            channel.setBypassDnd((Boolean) value);
+        }
+    },
+    LOCKSCREEN_VISIBILITY("lockscreenVisibility", Type.INT) {
+        @Override
+        Object read(NotificationChannel channel) {
+            return channel.getLockscreenVisibility();
+        }
+
+        @Override
+        void write(NotificationChannel channel, Object value) {
+            channel.setLockscreenVisibility((Integer) value);
+        }
+    },
+    SOUND("sound", Type.URI) {
+        @Override
+        Object read(NotificationChannel channel) {
+            return channel.getSound();
+        }
+
+        @Override
+        void write(NotificationChannel channel, Object value) {
+            channel.setSound((Uri) value, channel.getAudioAttributes());
+        }
+    },
+    LIGHTS("lights", Type.BOOLEAN) {
+        @Override
+        Object read(NotificationChannel channel) {
+            return channel.shouldShowLights();
+        }
+
+        @Override
+        void write(NotificationChannel channel, Object value) {
+            channel.enableLights((Boolean) value);
+        }
+    },
+    LIGHT_COLOR("lightColor", Type.INT) {
+        @Override
+        Object read(NotificationChannel channel) {
+            return channel.getLightColor();
+        }
+
+        @Override
+        void write(NotificationChannel channel, Object value) {
+            channel.setLightColor((Integer) value);
+        }
+    },
+    VIBRATION_PATTERN("vibrationPattern", Type.LONG_ARRAY) {
+        @Override
+        Object read(NotificationChannel channel) {
+            return channel.getVibrationPattern();
+        }
+
+        @Override
+        void write(NotificationChannel channel, Object value) {
+            channel.setVibrationPattern((long[]) value);
+        }
+    },
+    USER_VISIBLE_TASK_SHOWN("userVisibleTaskShown", Type.BOOLEAN) {
+        @Override
+        Object read(NotificationChannel channel) {
+            return channel.isUserVisibleTaskShown();
+        }
+
+        @Override
+        void write(NotificationChannel channel, Object value) {
+            channel.setUserVisibleTaskShown((Boolean) value);
+        }
+    },
+    VIBRATION_ENABLED("vibrationEnabled", Type.BOOLEAN) {
+        @Override
+        Object read(NotificationChannel channel) {
+            return channel.shouldVibrate();
+        }
+
+        @Override
+        void write(NotificationChannel channel, Object value) {
+            channel.enableVibration((Boolean) value);
+        }
+    },
+    SHOW_BADGE("showBadge", Type.BOOLEAN) {
+        @Override
+        Object read(NotificationChannel channel) {
+            return channel.canShowBadge();
+        }
+
+        @Override
+        void write(NotificationChannel channel, Object value) {
+            channel.setShowBadge((Boolean) value);
+        }
+    },
+    DELETED("deleted", Type.BOOLEAN) {
+        @Override
+        Object read(NotificationChannel channel) {
+            return channel.isDeleted();
+        }
+
+        @Override
+        void write(NotificationChannel channel, Object value) {
+            channel.setDeleted((Boolean) value);
+        }
+    },
+    DELETED_TIME_MS("deletedTimeMs", Type.LONG) {
+        @Override
+        Object read(NotificationChannel channel) {
+            return channel.getDeletedTimeMs();
+        }
+
+        @Override
+        void write(NotificationChannel channel, Object value) {
+            channel.setDeletedTimeMs((Long) value);
+        }
+    },
+    GROUP("group", Type.STRING) {
+        @Override
+        Object read(NotificationChannel channel) {
+            return channel.getGroup();
+        }
+
+        @Override
+        void write(NotificationChannel channel, Object value) {
+            channel.setGroup((String) value);
+        }
+    },
+    BLOCKABLE_SYSTEM("blockableSystem", Type.BOOLEAN) {
+        @Override
+        Object read(NotificationChannel channel) {
+            return channel.isBlockable();
+        }
+
+        @Override
+        void write(NotificationChannel channel, Object value) {
+            channel.setBlockable((Boolean) value);
+        }
+    },
+    ALLOW_BUBBLES("allowBubbles", Type.INT) {
+        @Override
+        Object read(NotificationChannel channel) {
+            return channel.getAllowBubbles();
+        }
+
+        @Override
+        void write(NotificationChannel channel, Object value) {
+            channel.setAllowBubbles((int) (Integer) value);
+        }
+    },
+    IMPORTANCE_LOCKED_DEFAULT_APP("importanceLockedDefaultApp", Type.BOOLEAN) {
+        @Override
+        boolean isPersisted() {
+            return false;
+        }
+
+        @Override
+        Object read(NotificationChannel channel) {
+            return channel.isImportanceLockedByCriticalDeviceFunction();
+        }
+
+        @Override
+        void write(NotificationChannel channel, Object value) {
+            channel.setImportanceLockedByCriticalDeviceFunction((Boolean) value);
+        }
+    },
+    ORIGINAL_IMPORTANCE("originalImportance", Type.INT) {
+        @Override
+        Object read(NotificationChannel channel) {
+            return channel.getOriginalImportance();
+        }
+
+        @Override
+        void write(NotificationChannel channel, Object value) {
+            channel.setOriginalImportance((Integer) value);
+        }
+    },
+    // parentId and conversationId are only ever applied together, see ChannelPatch.compile()
+    PARENT_ID("parentId", Type.STRING) {
+        @Override
+        Object read(NotificationChannel channel) {
+            return channel.getParentChannelId();
+        }
+
+        @Override
+        void write(NotificationChannel channel, Object value) {
+            channel.setConversationId((String) value, channel.getConversationId());
+        }
+    },
+    CONVERSATION_ID("conversationId", Type.STRING) {
+        @Override
+        Object read(NotificationChannel channel) {
+            return channel.getConversationId();
+        }
+
+        @Override
+        void write(NotificationChannel channel, Object value) {
+            channel.setConversationId(channel.getParentChannelId(), (String) value);
+        }
+    },
+    DEMOTED("demoted", Type.BOOLEAN) {
+        @Override
+        Object read(NotificationChannel channel) {
+            return channel.isDemoted();
+        }
+
+        @Override
+        void write(NotificationChannel channel, Object value) {
+            channel.setDemoted((Boolean) value);
+        }
+    },
+    IMPORTANT_CONVO("importantConvo", Type.BOOLEAN) {
+        @Override
+        Object read(NotificationChannel channel) {
+            return channel.isImportantConversation();
+        }
+
+        @Override
+        void write(NotificationChannel channel, Object value) {
+            channel.setImportantConversation((Boolean) value);
+        }
+    },
+    LAST_NOTIFICATION_UPDATE_TIME_MS("lastNotificationUpdateTimeMs", Type.LONG) {
+        @Override
+        boolean isPersisted() {
+            return false;
+        }
+
+        @Override
+        Object read(NotificationChannel channel) {
+            return channel.getLastNotificationUpdateTimeMs();
+        }
+
+        @Override
+        void write(NotificationChannel channel, Object value) {
+            channel.setLastNotificationUpdateTimeMs((Long) value);
+        }
+    };
+
+    enum Type {
+        STRING,
+        BOOLEAN,
+        INT,
+        LONG,
+        URI,
+        LONG_ARRAY
+    }
+
+    private static final Map<String, ChannelField> BY_KEY = new HashMap<>();
+    static {
+        for (ChannelField field : values()) {
+            BY_KEY.put(field.key, field);
+        }
+    }
+
+    private final String key;
+    private final Type type;
+
+    ChannelField(String key, Type type) {
+        this.key = key;
+        this.type = type;
+    }
+
+    /**
+     * @return the field for an {@code update_fields} key, or null if there is none
+     */
+    static ChannelField forKey(String key) {
+        return BY_KEY.get(key);
+    }
+
+    String key() {
+        return key;
+    }
+
+    Type type() {
+        return type;
+    }
+
+    /**
+     * @return whether the field survives NotificationChannel.writeXml()/populateFromXml(), as
+     *         opposed to state system_server recomputes at runtime
+     */
+    boolean isPersisted() {
+        return true;
+    }
+
+    abstract Object read(NotificationChannel channel);
+
+    abstract void write(NotificationChannel channel, Object value);
+
+    /**
+     * Converts an {@code update_fields} value to the type {@link #write} expects.
+     *
+     * @throws IllegalArgumentException if the value cannot be parsed
+     */
+    Object parse(String value) {
+        switch (type) {
+            case BOOLEAN:
+                if (value.equalsIgnoreCase("true")) {
+                    return true;
+                }
+                if (value.equalsIgnoreCase("false")) {
+                    return false;
+                }
+                throw new IllegalArgumentException("\"" + key + "\" must be true or false, not \"" + value + "\"");
+            case INT:
+                return Integer.parseInt(value);
+            case LONG:
+                return Long.parseLong(value);
+            case URI:
+                return value.equals("") ? null : Uri.parse(value);
+            case LONG_ARRAY:
+                return parseLongArray(value);
+            default:
+                return value;
+        }
+    }
+
+    /**
+     * @return true if the channel already holds the given parsed value
+     */
+    boolean matches(NotificationChannel channel, Object value) {
+        if (type == Type.LONG_ARRAY) {
+            return Arrays.equals((long[]) read(channel), (long[]) value);
+        }
+        return Objects.equals(read(channel), value);
+    }
+
+    /**
+     * Compares the persisted fields of two versions of the same channel.
+     *
+     * @return the keys of the fields whose value differs between {@code current} and
+     *         {@code wanted}, empty if writing {@code wanted} would not change anything
+     */
+    static List<String> diff(NotificationChannel current, NotificationChannel wanted) {
+        List<String> changed = new ArrayList<>();
+        for (ChannelField field : values()) {
+            if (field.isPersisted() && !field.matches(current, field.read(wanted))) {
+                changed.add(field.key);
+            }
+        }
+        return changed;
+    }
+
+    private static long[] parseLongArray(String str) {
+        if (str.startsWith("[") && str.endsWith("]")) {
+            str = str.substring(1, str.length() - 1);
+        }
+        String[] values = str.split(",");
+        long[] longValues = new long[values.length];
+        for (int i = 0; i < values.length; i++) {
+            try {
+                longValues[i] = Long.parseLong(values[i].trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("input could not be parsed to type 'long[]', input=\"" + str + "\"", e);
+            }
+        }
+        return longValues;
+    }
+}
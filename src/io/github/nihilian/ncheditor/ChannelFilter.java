@@ -0,0 +1,301 @@
+package io.github.nihilian.ncheditor;
+
+import android.app.NotificationChannel;
+
+import java.util.Objects;
+
+/**
+ * Predicate for {@code -where}, e.g. {@code importance>=3 && !showBadge}. The expression is
+ * parsed once into a tree of nodes bound to a {@link ChannelField} and an already parsed
+ * constant, so testing a channel only calls its getters.
+ *
+ * <pre>
+ * expr       := and ("||" and)*
+ * and        := unary ("&amp;&amp;" unary)*
+ * unary      := "!" unary | "(" expr ")" | comparison
+ * comparison := key [("==" | "!=" | "&lt;" | "&lt;=" | "&gt;" | "&gt;=") value]
+ * </pre>
+ *
+ * Keys are {@code pkg}, {@code id} and the -fields keys; a bare key must be a boolean field.
+ * Values are bare words, quoted strings or {@code null}.
+ */
+abstract class ChannelFilter {
+    private static final String KEY_PKG = "pkg";
+    private static final String KEY_ID = "id";
+
+    private static final int OP_LT = 0;
+    private static final int OP_LE = 1;
+    private static final int OP_GT = 2;
+    private static final int OP_GE = 3;
+
+    abstract boolean test(String pkg, NotificationChannel channel);
+
+    /**
+     * @throws IllegalArgumentException if the expression is malformed or uses unknown keys
+     */
+    static ChannelFilter compile(String expression) {
+        Parser parser = new Parser(expression);
+        ChannelFilter filter = parser.parseOr();
+        parser.skipSpace();
+        if (parser.pos != expression.length()) {
+            throw parser.error("unexpected \"" + expression.substring(parser.pos) + "\"");
+        }
+        return filter;
+    }
+
+    private static final class Or extends ChannelFilter {
+        private final ChannelFilter left;
+        private final ChannelFilter right;
+
+        Or(ChannelFilter left, ChannelFilter right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        boolean test(String pkg, NotificationChannel channel) {
+            return left.test(pkg, channel) || right.test(pkg, channel);
+        }
+    }
+
+    private static final class And extends ChannelFilter {
+        private final ChannelFilter left;
+        private final ChannelFilter right;
+
+        And(ChannelFilter left, ChannelFilter right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        boolean test(String pkg, NotificationChannel channel) {
+            return left.test(pkg, channel) && right.test(pkg, channel);
+        }
+    }
+
+    private static final class Not extends ChannelFilter {
+        private final ChannelFilter operand;
+
+        Not(ChannelFilter operand) {
+            this.operand = operand;
+        }
+
+        @Override
+        boolean test(String pkg, NotificationChannel channel) {
+            return !operand.test(pkg, channel);
+        }
+    }
+
+    private static final class FieldEquals extends ChannelFilter {
+        private final ChannelField field;
+        private final Object value;
+
+        FieldEquals(ChannelField field, Object value) {
+            this.field = field;
+            this.value = value;
+        }
+
+        @Override
+        boolean test(String pkg, NotificationChannel channel) {
+            return field.matches(channel, value);
+        }
+    }
+
+    private static final class FieldCompare extends ChannelFilter {
+        private final ChannelField field;
+        private final long value;
+        private final int op;
+
+        FieldCompare(ChannelField field, long value, int op) {
+            this.field = field;
+            this.value = value;
+            this.op = op;
+        }
+
+        @Override
+        boolean test(String pkg, NotificationChannel channel) {
+            int cmp = Long.compare(((Number) field.read(channel)).longValue(), value);
+            switch (op) {
+                case OP_LT:
+                    return cmp < 0;
+                case OP_LE:
+                    return cmp <= 0;
+                case OP_GT:
+                    return cmp > 0;
+                default:
+                    return cmp >= 0;
+            }
+        }
+    }
+
+    private static final class PkgEquals extends ChannelFilter {
+        private final String value;
+
+        PkgEquals(String value) {
+            this.value = value;
+        }
+
+        @Override
+        boolean test(String pkg, NotificationChannel channel) {
+            return Objects.equals(value, pkg);
+        }
+    }
+
+    private static final class IdEquals extends ChannelFilter {
+        private final String value;
+
+        IdEquals(String value) {
+            this.value = value;
+        }
+
+        @Override
+        boolean test(String pkg, NotificationChannel channel) {
+            return Objects.equals(value, channel.getId());
+        }
+    }
+
+    private static final class Parser {
+        private final String input;
+        private int pos;
+
+        Parser(String input) {
+            this.input = input;
+        }
+
+        IllegalArgumentException error(String message) {
+            return new IllegalArgumentException("-where: " + message + " at position " + pos + " of \"" + input + "\"");
+        }
+
+        void skipSpace() {
+            while (pos < input.length() && Character.isWhitespace(input.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        boolean accept(String token) {
+            skipSpace();
+            if (input.startsWith(token, pos)) {
+                pos += token.length();
+                return true;
+            }
+            return false;
+        }
+
+        ChannelFilter parseOr() {
+            ChannelFilter filter = parseAnd();
+            while (accept("||")) {
+                filter = new Or(filter, parseAnd());
+            }
+            return filter;
+        }
+
+        ChannelFilter parseAnd() {
+            ChannelFilter filter = parseUnary();
+            while (accept("&&")) {
+                filter = new And(filter, parseUnary());
+            }
+            return filter;
+        }
+
+        ChannelFilter parseUnary() {
+            if (accept("!")) {
+                return new Not(parseUnary());
+            }
+            if (accept("(")) {
+                ChannelFilter filter = parseOr();
+                if (!accept(")")) {
+                    throw error("missing \")\"");
+                }
+                return filter;
+            }
+            return parseComparison();
+        }
+
+        ChannelFilter parseComparison() {
+            String key = parseWord();
+            String op = parseOperator();
+            if (key.equals(KEY_PKG) || key.equals(KEY_ID)) {
+                if (op == null || !(op.equals("==") || op.equals("!="))) {
+                    throw error("\"" + key + "\" only supports == and !=");
+                }
+                String value = parseValue();
+                ChannelFilter filter = key.equals(KEY_PKG) ? new PkgEquals(value) : new IdEquals(value);
+                return op.equals("!=") ? new Not(filter) : filter;
+            }
+            ChannelField field = ChannelField.forKey(key);
+            if (field == null) {
+                throw error("unknown key \"" + key + "\", see -fields");
+            }
+            if (op == null) {
+                if (field.type() != ChannelField.Type.BOOLEAN) {
+                    throw error("\"" + key + "\" is not a boolean field and needs a comparison");
+                }
+                return new FieldEquals(field, Boolean.TRUE);
+            }
+            String value = parseValue();
+            if (op.equals("==") || op.equals("!=")) {
+                Object parsed = value != null ? field.parse(value) : null;
+                ChannelFilter filter = new FieldEquals(field, parsed);
+                return op.equals("!=") ? new Not(filter) : filter;
+            }
+            if (field.type() != ChannelField.Type.INT && field.type() != ChannelField.Type.LONG) {
+                throw error("\"" + key + "\" is not numeric and only supports == and !=");
+            }
+            if (value == null) {
+                throw error("cannot compare \"" + key + "\" with null");
+            }
+            try {
+                int compareOp = op.equals("<") ? OP_LT : op.equals("<=") ? OP_LE : op.equals(">") ? OP_GT : OP_GE;
+                return new FieldCompare(field, Long.parseLong(value), compareOp);
+            } catch (NumberFormatException e) {
+                throw error("\"" + value + "\" is not a number");
+            }
+        }
+
+        String parseOperator() {
+            skipSpace();
+            for (String op : new String[] { "==", "!=", "<=", ">=", "<", ">" }) {
+                if (input.startsWith(op, pos)) {
+                    pos += op.length();
+                    return op;
+                }
+            }
+            return null;
+        }
+
+        String parseWord() {
+            skipSpace();
+            int start = pos;
+            while (pos < input.length() && isWordChar(input.charAt(pos))) {
+                pos++;
+            }
+            if (start == pos) {
+                throw error(pos < input.length() ? "unexpected \"" + input.charAt(pos) + "\"" : "unexpected end of expression");
+            }
+            return input.substring(start, pos);
+        }
+
+        /**
+         * @return the value, or null for the {@code null} keyword
+         */
+        String parseValue() {
+            skipSpace();
+            if (pos < input.length() && (input.charAt(pos) == '"' || input.charAt(pos) == '\'')) {
+                char quote = input.charAt(pos);
+                int end = input.indexOf(quote, pos + 1);
+                if (end < 0) {
+                    throw error("unterminated quote");
+                }
+                String value = input.substring(pos + 1, end);
+                pos = end + 1;
+                return value;
+            }
+            String word = parseWord();
+            return word.equals("null") ? null : word;
+        }
+
+        private static boolean isWordChar(char c) {
+            return Character.isLetterOrDigit(c) || c == '.' || c == '_' || c == '-' || c == ':' || c == '/' || c == ',' || c == '[' || c == ']';
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package io.github.nihilian.ncheditor;
+
+import android.app.NotificationChannel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * A set of {@code update_fields} parsed and validated once, then applied to any number of
+ * channels. Applying a patch only compares and writes the fields it holds, in
+ * {@link ChannelField} order, and never touches the original strings again. Instances are
+ * immutable and can be shared between threads.
+ */
+final class ChannelPatch {
+    private final ChannelField[] fields;
+    private final Object[] values;
+
+    private ChannelPatch(ChannelField[] fields, Object[] values) {
+        this.fields = fields;
+        this.values = values;
+    }
+
+    /**
+     * Unknown keys are reported once and ignored. {@code parentId} and {@code conversationId}
+     * are only kept when both are given.
+     *
+     * @throws IllegalArgumentException if a value cannot be parsed
+     */
+    static ChannelPatch compile(Properties update_fields) {
+        for (String key : update_fields.stringPropertyNames()) {
+            if (ChannelField.forKey(key) == null) {
+                System.err.println("WARNING: ignoring unknown field \"" + key + "\", see -fields");
+            }
+        }
+        boolean hasConversation = update_fields.containsKey(ChannelField.CONVERSATION_ID.key()) && update_fields.containsKey(ChannelField.PARENT_ID.key());
+        List<ChannelField> fields = new ArrayList<>();
+        List<Object> values = new ArrayList<>();
+        for (ChannelField field : ChannelField.values()) {
+            String value = update_fields.getProperty(field.key());
+            if (value == null) {
+                continue;
+            }
+            if ((field == ChannelField.PARENT_ID || field == ChannelField.CONVERSATION_ID) && !hasConversation) {
+                continue;
+            }
+            try {
+                values.add(field.parse(value));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("invalid value for \"" + field.key() + "\": \"" + value + "\"", e);
+            }
+            fields.add(field);
+        }
+        return new ChannelPatch(fields.toArray(new ChannelField[0]), values.toArray());
+    }
+
+    boolean isEmpty() {
+        return fields.length == 0;
+    }
+
+    /**
+     * Applies the patch to the channel, skipping fields that already hold the patched value.
+     *
+     * @return the keys of the fields that actually changed, empty if the channel can be left alone
+     */
+    List<String> apply(NotificationChannel channel) {
+        List<String> changed = new ArrayList<>(fields.length);
+        for (int i = 0; i < fields.length; i++) {
+            if (!fields[i].matches(channel, values[i])) {
+                fields[i].write(channel, values[i]);
+                changed.add(fields[i].key());
+            }
+        }
+        return changed;
+    }
+}
@@ -0,0 +1,147 @@
+package io.github.nihilian.ncheditor;
+
+import android.app.INotificationManager;
+import android.app.NotificationChannel;
+import android.app.NotificationChannelGroup;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.os.RemoteException;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Groups the channel and group writes of one package so that a failure part way through does
+ * not leave the package half modified. Failures are {@link RemoteException}s as well as the
+ * unchecked exceptions system_server raises, e.g. an {@link IllegalArgumentException} for a
+ * channel that no longer exists. Every object is captured before it is changed, as its parcel
+ * bytes rather than a live copy, and on failure the pre-images of everything already written are
+ * put back, newest first. Objects that were only captured are not touched, and channels or
+ * groups that did not exist before are left in place.
+ */
+final class ChannelTransaction {
+
+    interface Body<T> {
+        T run(ChannelTransaction transaction) throws RemoteException;
+    }
+
+    private final INotificationManager notificationManager;
+    private final String pkg;
+    private final int uid;
+    private final Map<String, byte[]> channelPreImages = new HashMap<>();
+    private final Map<String, byte[]> groupPreImages = new HashMap<>();
+    // in write order
+    private final List<Write> written = new ArrayList<>();
+
+    private static final class Write {
+        final boolean isGroup;
+        final String id;
+
+        Write(boolean isGroup, String id) {
+            this.isGroup = isGroup;
+            this.id = id;
+        }
+    }
+
+    private ChannelTransaction(INotificationManager notificationManager, String pkg, int uid) {
+        this.notificationManager = notificationManager;
+        this.pkg = pkg;
+        this.uid = uid;
+    }
+
+    /**
+     * Runs the body in a new transaction. If it throws a {@link RemoteException} or a
+     * {@link RuntimeException}, the writes it made so far are rolled back before the exception
+     * is rethrown.
+     */
+    static <T> T run(INotificationManager notificationManager, String pkg, int uid, Body<T> body) throws RemoteException {
+        ChannelTransaction transaction = new ChannelTransaction(notificationManager, pkg, uid);
+        try {
+            return body.run(transaction);
+        } catch (RemoteException | RuntimeException e) {
+            transaction.rollback();
+            throw e;
+        }
+    }
+
+    /**
+     * Records the current state of the channel. Must be called before the channel, or the
+     * channel later written under its id, is changed.
+     */
+    void capture(NotificationChannel channel) {
+        if (!channelPreImages.containsKey(channel.getId())) {
+            channelPreImages.put(channel.getId(), marshall(channel));
+        }
+    }
+
+    /**
+     * Records the current state of the group, without its channels.
+     */
+    void capture(NotificationChannelGroup group) {
+        if (!groupPreImages.containsKey(group.getId())) {
+            NotificationChannelGroup copy = group.clone();
+            copy.setChannels(new ArrayList<NotificationChannel>());
+            groupPreImages.put(group.getId(), marshall(copy));
+        }
+    }
+
+    void update(NotificationChannel channel) throws RemoteException {
+        // a failed call may still have reached system_server, so it is rolled back as well
+        written.add(new Write(false, channel.getId()));
+        notificationManager.updateNotificationChannelForPackage(pkg, uid, channel);
+    }
+
+    void update(NotificationChannelGroup group) throws RemoteException {
+        written.add(new Write(true, group.getId()));
+        notificationManager.updateNotificationChannelGroupForPackage(pkg, uid, group);
+    }
+
+    private void rollback() {
+        for (int i = written.size() - 1; i >= 0; i--) {
+            boolean isGroup = written.get(i).isGroup;
+            String id = written.get(i).id;
+            byte[] preImage = isGroup ? groupPreImages.remove(id) : channelPreImages.remove(id);
+            // written twice, or new: nothing (more) to restore
+            if (preImage == null) {
+                continue;
+            }
+            String label = isGroup ? "groupId" : "channelId";
+            try {
+                if (isGroup) {
+                    notificationManager.updateNotificationChannelGroupForPackage(pkg, uid, unmarshall(preImage, NotificationChannelGroup.CREATOR));
+                } else {
+                    notificationManager.updateNotificationChannelForPackage(pkg, uid, unmarshall(preImage, NotificationChannel.CREATOR));
+                }
+                System.err.println("Rolled back: pkg=\"" + pkg + "\" " + label + "=\"" + id + "\"");
+            } catch (RemoteException | RuntimeException e) {
+                System.err.println("ERROR: could not roll back pkg=\"" + pkg + "\" " + label + "=\"" + id + "\"");
+                e.printStackTrace();
+            }
+        }
+        written.clear();
+    }
+
+    private static byte[] marshall(Parcelable parcelable) {
+        Parcel parcel = Parcel.obtain();
+        try {
+            parcelable.writeToParcel(parcel, 0);
+            return parcel.marshall();
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    private static <T> T unmarshall(byte[] bytes, Parcelable.Creator<T> creator) {
+        Parcel parcel = Parcel.obtain();
+        try {
+            parcel.unmarshall(bytes, 0, bytes.length);
+            parcel.setDataPosition(0);
+            return creator.createFromParcel(parcel);
+        } finally {
+            parcel.recycle();
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package io.github.nihilian.ncheditor;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Long-lived command loop for {@code -server}. Every line is split like a shell would split it
+ * and handed to {@link Main#run}, so binder proxies and resolved UIDs are reused between
+ * commands instead of paying for a fresh {@code app_process} each time. Resolved UIDs are
+ * revalidated once per command, since packages can change while the server is running.
+ */
+final class CommandServer {
+    static final String STATUS_PREFIX = "%% status=";
+
+    private static final String CMD_FLUSH = "flush";
+    private static final String CMD_QUIT = "quit";
+    private static final String CMD_SHUTDOWN = "shutdown";
+
+    private CommandServer() {}
+
+    static void serveStdin() throws IOException {
+        BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        serve(in);
+    }
+
+    /**
+     * Accepts one connection at a time on the loopback interface, e.g. behind
+     * {@code adb forward tcp:<port> tcp:<port>}. While a client is connected, stdout and stderr
+     * are redirected to its socket.
+     */
+    static void serveSocket(int port) throws IOException {
+        try (ServerSocket serverSocket = new ServerSocket(port, 1, InetAddress.getLoopbackAddress())) {
+            System.err.println("Listening on " + serverSocket.getLocalSocketAddress());
+            boolean running = true;
+            while (running) {
+                try (Socket client = serverSocket.accept()) {
+                    BufferedReader in = new BufferedReader(new InputStreamReader(client.getInputStream(), StandardCharsets.UTF_8));
+                    PrintStream out = new PrintStream(new BufferedOutputStream(client.getOutputStream()), false, "UTF-8");
+                    PrintStream stdout = System.out;
+                    PrintStream stderr = System.err;
+                    System.setOut(out);
+                    System.setErr(out);
+                    try {
+                        running = serve(in);
+                    } finally {
+                        out.flush();
+                        System.setOut(stdout);
+                        System.setErr(stderr);
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return false if the client asked for the whole server to shut down
+     */
+    private static boolean serve(BufferedReader in) throws IOException {
+        String line;
+        while ((line = in.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            if (line.equals(CMD_QUIT)) {
+                return true;
+            }
+            if (line.equals(CMD_SHUTDOWN)) {
+                return false;
+            }
+            int status = execute(line);
+            System.out.println(STATUS_PREFIX + status);
+            System.out.flush();
+        }
+        return true;
+    }
+
+    private static int execute(String line) {
+        if (line.equals(CMD_FLUSH)) {
+            UidIndex.clear();
+            return 0;
+        }
+        List<String> args;
+        try {
+            args = tokenize(line);
+        } catch (IllegalArgumentException e) {
+            System.err.println("ERROR: " + e.getMessage());
+            return 1;
+        }
+        if (args.contains("-server") || args.contains("--server")) {
+            System.err.println("ERROR: -server cannot be nested");
+            return 1;
+        }
+        try {
+            return Main.run(args.toArray(new String[0]));
+        } catch (RuntimeException e) {
+            // e.g. a channel that does not exist; keep serving the remaining commands
+            e.printStackTrace();
+            return 1;
+        } finally {
+            UidIndex.saveAll();
+            UidIndex.invalidateAll();
+        }
+    }
+
+    /**
+     * Splits a command line on whitespace, honouring single quotes, double quotes and
+     * backslash escapes the same way {@code /system/bin/sh} would for simple arguments.
+     */
+    static List<String> tokenize(String line) {
+        List<String> tokens = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean inToken = false;
+        char quote = 0;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quote == '\'') {
+                if (c == '\'') {
+                    quote = 0;
+                } else {
+                    current.append(c);
+                }
+            } else if (c == '\\') {
+                if (++i == line.length()) {
+                    throw new IllegalArgumentException("dangling escape at end of line");
+                }
+                current.append(line.charAt(i));
+                inToken = true;
+            } else if (quote == '"') {
+                if (c == '"') {
+                    quote = 0;
+                } else {
+                    current.append(c);
+                }
+            } else if (c == '\'' || c == '"') {
+                quote = c;
+                inToken = true;
+            } else if (Character.isWhitespace(c)) {
+                if (inToken) {
+                    tokens.add(current.toString());
+                    current.setLength(0);
+                    inToken = false;
+                }
+            } else {
+                current.append(c);
+                inToken = true;
+            }
+        }
+        if (quote != 0) {
+            throw new IllegalArgumentException("unterminated quote in: " + line);
+        }
+        if (inToken) {
+            tokens.add(current.toString());
+        }
+        return tokens;
+    }
+}
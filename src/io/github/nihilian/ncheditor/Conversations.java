@@ -0,0 +1,143 @@
+package io.github.nihilian.ncheditor;
+
+import android.app.INotificationManager;
+import android.app.NotificationChannel;
+
+import android.content.pm.ParceledListSlice;
+
+import android.os.RemoteException;
+import android.os.UserHandle;
+
+import android.service.notification.ConversationChannelWrapper;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * {@code -conversations}: conversation channels fetched with a single getConversations() call
+ * for the whole device (or getConversationsForPackage() with -pkg) instead of listing every
+ * package's channels and looking for a conversation id. Each entry already carries the UID of
+ * its package, so writes need no UID lookups either. getConversations() covers every profile,
+ * so entries of users other than the one the command runs for ({@code -user}) are dropped.
+ */
+final class Conversations {
+    // package -> UID -> conversations
+    private final Map<String, Map<Integer, List<ConversationChannelWrapper>>> byPackage;
+
+    private Conversations(Map<String, Map<Integer, List<ConversationChannelWrapper>>> byPackage) {
+        this.byPackage = byPackage;
+    }
+
+    /**
+     * @param pkg            only fetch this package's conversations, or null for every package
+     * @param onlyImportant  skip conversations that are not marked as important
+     * @param filter         only keep conversations matching this filter, may be null
+     */
+    static Conversations fetch(String pkg, boolean onlyImportant, ChannelFilter filter) throws RemoteException {
+        INotificationManager notificationManager = Main.getNotificationManagerService();
+        int userId = Main.getUserId();
+        ParceledListSlice<ConversationChannelWrapper> conversations;
+        if (pkg != null) {
+            int uid = Main.getPackageUid(pkg);
+            if (uid < 0) {
+                throw new IllegalArgumentException("package \"" + pkg + "\" is not installed");
+            }
+            conversations = notificationManager.getConversationsForPackage(pkg, uid);
+        } else {
+            conversations = notificationManager.getConversations(onlyImportant);
+        }
+        Map<String, Map<Integer, List<ConversationChannelWrapper>>> byPackage = new LinkedHashMap<>();
+        for (ConversationChannelWrapper conversation : conversations.getList()) {
+            NotificationChannel channel = conversation.getNotificationChannel();
+            if (channel == null
+                    || UserHandle.getUserId(conversation.getUid()) != userId
+                    || (onlyImportant && !channel.isImportantConversation())
+                    || (filter != null && !filter.test(conversation.getPkg(), channel))) {
+                continue;
+            }
+            Map<Integer, List<ConversationChannelWrapper>> byUid = byPackage.get(conversation.getPkg());
+            if (byUid == null) {
+                byUid = new LinkedHashMap<>();
+                byPackage.put(conversation.getPkg(), byUid);
+            }
+            List<ConversationChannelWrapper> list = byUid.get(conversation.getUid());
+            if (list == null) {
+                list = new ArrayList<>();
+                byUid.put(conversation.getUid(), list);
+            }
+            list.add(conversation);
+        }
+        return new Conversations(byPackage);
+    }
+
+    void list(ListingWriter writer) {
+        try {
+            for (Map.Entry<String, Map<Integer, List<ConversationChannelWrapper>>> entry : byPackage.entrySet()) {
+                List<ConversationChannelWrapper> list = new ArrayList<>();
+                for (List<ConversationChannelWrapper> forUid : entry.getValue().values()) {
+                    list.addAll(forUid);
+                }
+                for (int i = 0; i < list.size(); i++) {
+                    writer.channel(entry.getKey(), i, list.size(), list.get(i).getNotificationChannel());
+                }
+            }
+        } finally {
+            writer.flush();
+        }
+    }
+
+    /**
+     * Applies {@code demoted} and/or {@code importantConvo} to every conversation, one package
+     * per worker so that a package's writes are never interleaved with another's. Each of the
+     * package's UIDs is written in a transaction of its own.
+     *
+     * @return false if any package could not be updated
+     */
+    boolean update(Properties update_fields, int threads) {
+        for (String key : update_fields.stringPropertyNames()) {
+            ChannelField field = ChannelField.forKey(key);
+            if (field != ChannelField.DEMOTED && field != ChannelField.IMPORTANT_CONVO) {
+                throw new IllegalArgumentException("-conversations can only change " + ChannelField.DEMOTED.key() + " and " + ChannelField.IMPORTANT_CONVO.key() + ", not \"" + key + "\"");
+            }
+        }
+        final ChannelPatch patch = ChannelPatch.compile(update_fields);
+        final INotificationManager notificationManager = Main.getNotificationManagerService();
+        // updated, seen; PackageFanOut reports failed packages itself
+        final int[] counts = new int[2];
+        List<String> packages = new ArrayList<>(byPackage.keySet());
+        boolean complete = PackageFanOut.run(packages, threads,
+                pkg -> {
+                    List<String> updated = new ArrayList<>();
+                    for (final Map.Entry<Integer, List<ConversationChannelWrapper>> entry : byPackage.get(pkg).entrySet()) {
+                        updated.addAll(ChannelTransaction.run(notificationManager, pkg, entry.getKey(), transaction -> {
+                            List<String> updatedForUid = new ArrayList<>();
+                            for (ConversationChannelWrapper conversation : entry.getValue()) {
+                                NotificationChannel channel = conversation.getNotificationChannel();
+                                transaction.capture(channel);
+                                List<String> changed = patch.apply(channel);
+                                if (!changed.isEmpty()) {
+                                    transaction.update(channel);
+                                    updatedForUid.add("Updated: pkg=\"" + pkg + "\" uid=" + entry.getKey() + " channelId=\"" + channel.getId() + "\" conversationId=\"" + channel.getConversationId() + "\" fields=" + String.join(",", changed));
+                                }
+                            }
+                            return updatedForUid;
+                        }));
+                    }
+                    return updated;
+                },
+                (pkg, updated) -> {
+                    for (String line : updated) {
+                        System.out.println(IpcPlan.label(line));
+                    }
+                    counts[0] += updated.size();
+                    for (List<ConversationChannelWrapper> conversations : byPackage.get(pkg).values()) {
+                        counts[1] += conversations.size();
+                    }
+                });
+        System.out.println(IpcPlan.label("Updated " + counts[0] + " of " + counts[1] + " conversation(s) in " + packages.size() + " package(s), " + (counts[1] - counts[0]) + " unchanged"));
+        return complete;
+    }
+}
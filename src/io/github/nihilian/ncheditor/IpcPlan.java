@@ -0,0 +1,155 @@
+package io.github.nihilian.ncheditor;
+
+import android.app.INotificationManager;
+
+import android.content.pm.IPackageManager;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@code -plan}: runs a command against counting wrappers of the system services. Reads go
+ * through to system_server so targets are resolved and diffs are computed against the real
+ * state; every other call is counted and dropped, so nothing is written. The report lists the
+ * binder calls the command would have made, by method.
+ */
+final class IpcPlan {
+    // methods with these prefixes only read state, everything else is treated as a write
+    private static final String[] READ_PREFIXES = {"get", "are", "can", "is", "has", "should", "matches"};
+
+    private static volatile IpcPlan active;
+
+    private final ConcurrentHashMap<String, AtomicLong> reads = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, AtomicLong> writes = new ConcurrentHashMap<>();
+    private INotificationManager notificationManager;
+    private IPackageManager packageManager;
+
+    /**
+     * @return whether a plan is already recording this command
+     */
+    static boolean isActive() {
+        return active != null;
+    }
+
+    /**
+     * Marks a line that reports a write as planned while a plan is recording, since the write
+     * was dropped.
+     */
+    static String label(String line) {
+        return active != null ? "(planned) " + line : line;
+    }
+
+    /**
+     * Routes the services of {@link Main} through this plan until {@link #uninstall()}.
+     */
+    void install() {
+        notificationManager = Main.getNotificationManagerService();
+        packageManager = Main.getPackageManagerService();
+        Main.interceptServices(wrap(INotificationManager.class, notificationManager), wrap(IPackageManager.class, packageManager));
+        active = this;
+    }
+
+    void uninstall() {
+        Main.interceptServices(notificationManager, packageManager);
+        active = null;
+    }
+
+    private <T> T wrap(Class<T> type, final T service) {
+        InvocationHandler handler = new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                String name = method.getName();
+                if (method.getDeclaringClass() == Object.class || name.equals("asBinder")) {
+                    return invokeService(service, method, args);
+                }
+                if (isRead(name)) {
+                    count(reads, name);
+                    return invokeService(service, method, args);
+                }
+                count(writes, name);
+                return defaultValue(method.getReturnType());
+            }
+        };
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, handler));
+    }
+
+    private static Object invokeService(Object service, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(service, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static boolean isRead(String method) {
+        for (String prefix : READ_PREFIXES) {
+            if (method.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void count(ConcurrentHashMap<String, AtomicLong> calls, String method) {
+        AtomicLong count = calls.get(method);
+        if (count == null) {
+            AtomicLong created = new AtomicLong();
+            count = calls.putIfAbsent(method, created);
+            if (count == null) {
+                count = created;
+            }
+        }
+        count.incrementAndGet();
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == boolean.class) {
+            return false;
+        } else if (type == int.class) {
+            return 0;
+        } else if (type == long.class) {
+            return 0L;
+        } else if (type == float.class) {
+            return 0f;
+        } else if (type == double.class) {
+            return 0d;
+        } else if (type == byte.class) {
+            return (byte) 0;
+        } else if (type == short.class) {
+            return (short) 0;
+        } else if (type == char.class) {
+            return (char) 0;
+        }
+        return null;
+    }
+
+    /**
+     * Prints one {@code method calls kind} line per binder method, reads first, and the totals.
+     */
+    void print() {
+        System.out.println("method\tcalls\tkind");
+        long readTotal = print(reads, "read");
+        long writeTotal = print(writes, "write");
+        System.out.println("total\t" + (readTotal + writeTotal) + "\t" + readTotal + " read(s), " + writeTotal + " write(s) not sent");
+    }
+
+    private static long print(Map<String, AtomicLong> calls, String kind) {
+        List<String> methods = new ArrayList<>(calls.keySet());
+        Collections.sort(methods);
+        long total = 0;
+        for (String method : methods) {
+            long count = calls.get(method).get();
+            System.out.println(method + "\t" + count + "\t" + kind);
+            total += count;
+        }
+        return total;
+    }
+}
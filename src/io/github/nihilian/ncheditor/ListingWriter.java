@@ -0,0 +1,17 @@
+package io.github.nihilian.ncheditor;
+
+import android.app.NotificationChannel;
+import android.app.NotificationChannelGroup;
+
+/**
+ * Output format for -get. Entries are passed in the order they should appear; {@code index} is
+ * the zero-based position within the package's list of {@code count} entries, or -1 when a
+ * single channel or group was requested by id.
+ */
+interface ListingWriter {
+    void channel(String pkg, int index, int count, NotificationChannel channel);
+
+    void group(String pkg, int index, int count, NotificationChannelGroup group);
+
+    void flush();
+}
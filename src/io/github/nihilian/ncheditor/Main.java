@@ -8,17 +8,28 @@ import android.app.NotificationChannelGroup;
 import android.content.pm.IPackageManager;
 import android.content.pm.ParceledListSlice;
 
-import android.net.Uri;
-
 import android.os.IBinder;
 import android.os.RemoteException;
 import android.os.ServiceManager;
 import android.os.UserHandle;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Properties;
+import java.util.Set;
+import java.util.regex.Pattern;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
@@ -34,33 +45,57 @@ import org.json.JSONException;
 public class Main {
     private static final String PROG = "ncheditor";
     private static final String PKG_SHELL = "com.android.shell";
+    private static final int DEFAULT_THREADS = 8;
 
-    private static INotificationManager getNotificationManagerService() {
-        IBinder notificationBinder = ServiceManager.getService("notification");
-        return INotificationManager.Stub.asInterface(notificationBinder);
-    }
+    // Binder proxies are kept for the lifetime of the process so that -server sessions only
+    // pay for the lookups once. Resolved UIDs live in the UidIndex.
+    private static INotificationManager notificationManagerService;
+    private static IPackageManager packageManagerService;
 
-    private static IPackageManager getPackageManagerService() {
-        IBinder packageBinder = ServiceManager.getService("package");
-        return IPackageManager.Stub.asInterface(packageBinder);
+    static synchronized INotificationManager getNotificationManagerService() {
+        if (notificationManagerService == null) {
+            IBinder notificationBinder = ServiceManager.getService("notification");
+            notificationManagerService = INotificationManager.Stub.asInterface(notificationBinder);
+        }
+        return notificationManagerService;
     }
 
-    private static long[] parseFromString(String str) {
-        if (str.startsWith("[") && str.endsWith("]")) {
-            str = str.substring(1, str.length() - 1);
+    static synchronized IPackageManager getPackageManagerService() {
+        if (packageManagerService == null) {
+            IBinder packageBinder = ServiceManager.getService("package");
+            packageManagerService = IPackageManager.Stub.asInterface(packageBinder);
         }
-        String[] values = str.split(",");
-        long[] longValues = new long[values.length];
-        for (int i = 0; i < values.length; i++) {
-            try {
-                longValues[i] = Long.parseLong(values[i]);
-            } catch (NumberFormatException e) {
-                System.err.println("ERROR: input could not be parsed to type 'long[]', input=\"str\"");
-                e.printStackTrace();
-                System.exit(1);
-            }
-        }
-        return longValues;
+        return packageManagerService;
+    }
+
+    /**
+     * Replaces the system services with the given implementations, e.g. an in-process fake
+     * when running on a plain JVM.
+     */
+    static synchronized void useServices(INotificationManager notificationManager, IPackageManager packageManager) {
+        notificationManagerService = notificationManager;
+        packageManagerService = packageManager;
+        UidIndex.reset(null);
+    }
+
+    /**
+     * Like {@link #useServices} but keeps the resolved UIDs, for wrappers around the current
+     * services such as {@link IpcPlan}.
+     */
+    static synchronized void interceptServices(INotificationManager notificationManager, IPackageManager packageManager) {
+        notificationManagerService = notificationManager;
+        packageManagerService = packageManager;
+    }
+
+    /**
+     * @return the user the current command runs for, see {@link UserRunner}
+     */
+    static int getUserId() {
+        return UserRunner.currentUser();
+    }
+
+    static int getPackageUid(String pkg) throws RemoteException {
+        return UidIndex.forUser(getUserId()).getUid(pkg);
     }
 
     private static void printHelp(Options options) {
@@ -97,212 +132,407 @@ public class Main {
         System.out.println("  \"lastNotificationUpdateTimeMs\"  ");
     }
 
-    private static void listNotificationChannelsForPackage(String pkg, boolean includeDeleted) {
+    /**
+     * Opens a file for reading, or stdin for "-". Closing the returned stream leaves stdin open.
+     */
+    static InputStream openInput(String path) throws IOException {
+        if (path.equals("-")) {
+            return new FilterInputStream(System.in) {
+                @Override
+                public void close() {
+                }
+            };
+        }
+        return new FileInputStream(path);
+    }
+
+    /**
+     * Opens a file for writing, or stdout for "-". Closing the returned stream leaves stdout open.
+     */
+    static OutputStream openOutput(String path) throws IOException {
+        if (path.equals("-")) {
+            return new FilterOutputStream(System.out) {
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    out.write(b, off, len);
+                }
+
+                @Override
+                public void close() throws IOException {
+                    flush();
+                }
+            };
+        }
+        return new FileOutputStream(path);
+    }
+
+    static List<String> getAllPackages() throws RemoteException {
+        List<String> packages = new ArrayList<>(getPackageManagerService().getAllPackages());
+        Collections.sort(packages);
+        return packages;
+    }
+
+    /**
+     * Resolves a {@link PackageSelector} spec, only listing the installed packages if it
+     * contains globs.
+     */
+    static List<String> selectPackages(String spec) throws RemoteException {
+        PackageSelector selector = PackageSelector.parse(spec);
+        return selector.resolve(selector.hasGlobs() ? getAllPackages() : null);
+    }
+
+    private static void writeChannels(ListingWriter writer, String pkg, List<NotificationChannel> list) {
+        for (int i = 0; i < list.size(); i++) {
+            writer.channel(pkg, i, list.size(), list.get(i));
+        }
+    }
+
+    /**
+     * @return the channels matching the filter, or the list itself if there is no filter
+     */
+    private static List<NotificationChannel> filterChannels(ChannelFilter filter, String pkg, List<NotificationChannel> list) {
+        if (filter == null) {
+            return list;
+        }
+        List<NotificationChannel> matching = new ArrayList<>();
+        for (NotificationChannel channel : list) {
+            if (filter.test(pkg, channel)) {
+                matching.add(channel);
+            }
+        }
+        return matching;
+    }
+
+    private static void writeChannelGroups(ListingWriter writer, String pkg, List<NotificationChannelGroup> list) {
+        for (int i = 0; i < list.size(); i++) {
+            writer.group(pkg, i, list.size(), list.get(i));
+        }
+    }
+
+    private static boolean listNotificationChannelsForPackage(String pkg, boolean includeDeleted, ChannelFilter filter, ListingWriter writer) {
         INotificationManager notificationManager = getNotificationManagerService();
-        IPackageManager packageManager = getPackageManagerService();
         try {
-            int uid = packageManager.getPackageUid(pkg, 0, 0);
+            int uid = getPackageUid(pkg);
             ParceledListSlice<NotificationChannel> channels = notificationManager.getNotificationChannelsForPackage(pkg, uid, includeDeleted);
-            final List<NotificationChannel> list = channels.getList();
-            for (int i = 0; i < list.size(); i++) {
-                int list_entry = i + 1;
-                System.out.println("# " + list_entry + "/" + list.size());
-                // System.out.println(list.get(i).toJson());
-                System.out.println(list.get(i).toString());
-            }
+            writeChannels(writer, pkg, filterChannels(filter, pkg, channels.getList()));
+            return true;
         // } catch (RemoteException | JSONException e) {
         } catch (RemoteException e) {
             e.printStackTrace();
+            return false;
+        } finally {
+            writer.flush();
         }
     }
 
-    private static void listNotificationChannelGroupsForPackage(String pkg, boolean includeDeleted) {
+    /**
+     * Lists the package's groups with their channels filled in. system_server already populates
+     * the groups it returns, so this normally costs one call; only groups that come back without
+     * channels are asked for again with getPopulatedNotificationChannelGroupForPackage.
+     */
+    private static List<NotificationChannelGroup> getPopulatedNotificationChannelGroups(INotificationManager notificationManager, String pkg, int uid, boolean includeDeleted) throws RemoteException {
+        ParceledListSlice<NotificationChannelGroup> channelGroups = notificationManager.getNotificationChannelGroupsForPackage(pkg, uid, includeDeleted);
+        List<NotificationChannelGroup> groups = new ArrayList<>(channelGroups.getList());
+        for (int i = 0; i < groups.size(); i++) {
+            NotificationChannelGroup group = groups.get(i);
+            if (group.getId() != null && group.getChannels().isEmpty()) {
+                NotificationChannelGroup populated = notificationManager.getPopulatedNotificationChannelGroupForPackage(pkg, uid, group.getId(), includeDeleted);
+                if (populated != null) {
+                    groups.set(i, populated);
+                }
+            }
+        }
+        return groups;
+    }
+
+    private static boolean listNotificationChannelGroupsForPackage(String pkg, boolean includeDeleted, boolean populated, ListingWriter writer) {
         INotificationManager notificationManager = getNotificationManagerService();
-        IPackageManager packageManager = getPackageManagerService();
         try {
-            int uid = packageManager.getPackageUid(pkg, 0, 0);
-            ParceledListSlice<NotificationChannelGroup> channelGroups = notificationManager.getNotificationChannelGroupsForPackage(pkg, uid, includeDeleted);
-            final List<NotificationChannelGroup> list = channelGroups.getList();
-            for (int i = 0; i < list.size(); i++) {
-                int list_entry = i + 1;
-                System.out.println("# " + list_entry + "/" + list.size());
-                // System.out.println(list.get(i).toJson());
-                System.out.println(list.get(i).toString());
+            int uid = getPackageUid(pkg);
+            if (populated) {
+                writeChannelGroups(writer, pkg, getPopulatedNotificationChannelGroups(notificationManager, pkg, uid, includeDeleted));
+            } else {
+                ParceledListSlice<NotificationChannelGroup> channelGroups = notificationManager.getNotificationChannelGroupsForPackage(pkg, uid, includeDeleted);
+                writeChannelGroups(writer, pkg, channelGroups.getList());
             }
+            return true;
         // } catch (RemoteException | JSONException e) {
         } catch (RemoteException e) {
             e.printStackTrace();
+            return false;
+        } finally {
+            writer.flush();
         }
     }
 
-    private static void getNotificationChannelForPackage(String pkg, String channelId) {
+    private static boolean listNotificationChannelsForAllPackages(final boolean includeDeleted, int threads, final ChannelFilter filter, final ListingWriter writer) {
+        final INotificationManager notificationManager = getNotificationManagerService();
+        try {
+            return PackageFanOut.run(getAllPackages(), threads,
+                    pkg -> {
+                        int uid = getPackageUid(pkg);
+                        return filterChannels(filter, pkg, notificationManager.getNotificationChannelsForPackage(pkg, uid, includeDeleted).getList());
+                    },
+                    (pkg, list) -> writeChannels(writer, pkg, list));
+        } catch (RemoteException e) {
+            e.printStackTrace();
+            return false;
+        } finally {
+            writer.flush();
+        }
+    }
+
+    private static boolean listNotificationChannelGroupsForAllPackages(final boolean includeDeleted, final boolean populated, int threads, final ListingWriter writer) {
+        final INotificationManager notificationManager = getNotificationManagerService();
+        try {
+            return PackageFanOut.run(getAllPackages(), threads,
+                    pkg -> {
+                        int uid = getPackageUid(pkg);
+                        if (populated) {
+                            return getPopulatedNotificationChannelGroups(notificationManager, pkg, uid, includeDeleted);
+                        }
+                        return notificationManager.getNotificationChannelGroupsForPackage(pkg, uid, includeDeleted).getList();
+                    },
+                    (pkg, list) -> writeChannelGroups(writer, pkg, list));
+        } catch (RemoteException e) {
+            e.printStackTrace();
+            return false;
+        } finally {
+            writer.flush();
+        }
+    }
+
+    private static boolean getNotificationChannelForPackage(String pkg, String channelId, ChannelFilter filter, ListingWriter writer) {
         INotificationManager notificationManager = getNotificationManagerService();
         try {
-            NotificationChannel channel = notificationManager.getNotificationChannel(PKG_SHELL, 0, pkg, channelId);
-            // System.out.println(channel.toJson());
-            System.out.println(channel.toString());
+            NotificationChannel channel = notificationManager.getNotificationChannel(PKG_SHELL, getUserId(), pkg, channelId);
+            if (filter == null || filter.test(pkg, channel)) {
+                writer.channel(pkg, -1, 1, channel);
+            }
+            return true;
         // } catch (RemoteException | JSONException e) {
         } catch (RemoteException e) {
             e.printStackTrace();
+            return false;
+        } finally {
+            writer.flush();
         }
     }
 
-    private static void getNotificationChannelGroupForPackage(String pkg, String channelGroupId) {
+    private static boolean getNotificationChannelGroupForPackage(String pkg, String channelGroupId, ListingWriter writer) {
         INotificationManager notificationManager = getNotificationManagerService();
-        IPackageManager packageManager = getPackageManagerService();
         try {
-            int uid = packageManager.getPackageUid(pkg, 0, 0);
+            int uid = getPackageUid(pkg);
             NotificationChannelGroup channelGroup = notificationManager.getNotificationChannelGroupForPackage(channelGroupId, pkg, uid);
-            // System.out.println(channelGroup.toJson());
-            System.out.println(channelGroup.toString());
+            writer.group(pkg, -1, 1, channelGroup);
+            return true;
         // } catch (RemoteException | JSONException e) {
         } catch (RemoteException e) {
             e.printStackTrace();
+            return false;
+        } finally {
+            writer.flush();
         }
     }
 
-    private static void updateNotificationChannelForPackage(String pkg, String channelId, Properties update_fields) {
+    private static boolean updateNotificationChannelForPackage(String pkg, String channelId, ChannelPatch patch) {
         INotificationManager notificationManager = getNotificationManagerService();
-        IPackageManager packageManager = getPackageManagerService();
         try {
-            int uid = packageManager.getPackageUid(pkg, 0, 0);
-            NotificationChannel channel = notificationManager.getNotificationChannel(PKG_SHELL, 0, pkg, channelId);
+            NotificationChannel channel = notificationManager.getNotificationChannel(PKG_SHELL, getUserId(), pkg, channelId);
 
-            if (update_fields.containsKey("name")) {
-                channel.setName(update_fields.getProperty("name"));
-            }
-            if (update_fields.containsKey("description")) {
-                channel.setDescription(update_fields.getProperty("description"));
-            }
-            if (update_fields.containsKey("importance")) {
-                channel.setImportance(Integer.parseInt(update_fields.getProperty("importance")));
-            }
-            if (update_fields.containsKey("bypassDnd")) {
-                channel.setBypassDnd(Boolean.parseBoolean(update_fields.getProperty("bypassDnd")));
-            }
-            if (update_fields.containsKey("lockscreenVisibility")) {
-                channel.setLockscreenVisibility(Integer.parseInt(update_fields.getProperty("lockscreenVisibility")));
-            }
-            if (update_fields.containsKey("sound")) {
-                if (update_fields.getProperty("sound").equals("")) {
-                    channel.setSound(null, channel.getAudioAttributes());
-                } else {
-                    channel.setSound(Uri.parse(update_fields.getProperty("sound")), channel.getAudioAttributes());
-                }
-            }
-            if (update_fields.containsKey("lights")) {
-                channel.enableLights(Boolean.parseBoolean(update_fields.getProperty("lights")));
-            }
-            if (update_fields.containsKey("lightColor")) {
-                channel.setLightColor(Integer.parseInt(update_fields.getProperty("lightColor")));
-            }
-            if (update_fields.containsKey("vibrationPattern")) {
-                channel.setVibrationPattern(parseFromString(update_fields.getProperty("vibrationPattern")));
-            }
-            if (update_fields.containsKey("userVisibleTaskShown")) {
-                channel.setUserVisibleTaskShown(Boolean.parseBoolean(update_fields.getProperty("userVisibleTaskShown")));
-            }
-            if (update_fields.containsKey("vibrationEnabled")) {
-                channel.enableVibration(Boolean.parseBoolean(update_fields.getProperty("vibrationEnabled")));
-            }
-            if (update_fields.containsKey("showBadge")) {
-                channel.setShowBadge(Boolean.parseBoolean(update_fields.getProperty("showBadge")));
-            }
-            if (update_fields.containsKey("deleted")) {
-                channel.setDeleted(Boolean.parseBoolean(update_fields.getProperty("deleted")));
-            }
-            if (update_fields.containsKey("deletedTimeMs")) {
-                channel.setDeletedTimeMs(Long.parseLong(update_fields.getProperty("deletedTimeMs")));
-            }
-            if (update_fields.containsKey("group")) {
-                channel.setGroup(update_fields.getProperty("group"));
-            }
-            if (update_fields.containsKey("blockableSystem")) {
-                channel.setBlockable(Boolean.parseBoolean(update_fields.getProperty("blockableSystem")));
-            }
-            if (update_fields.containsKey("allowBubbles")) {
-                channel.setAllowBubbles(Integer.parseInt(update_fields.getProperty("allowBubbles")));
-            }
-            if (update_fields.containsKey("importanceLockedDefaultApp")) {
-                channel.setImportanceLockedByCriticalDeviceFunction(Boolean.parseBoolean(update_fields.getProperty("importanceLockedDefaultApp")));
-            }
-            if (update_fields.containsKey("originalImportance")) {
-                channel.setOriginalImportance(Integer.parseInt(update_fields.getProperty("originalImportance")));
-            }
-            if (update_fields.containsKey("conversationId") && update_fields.containsKey("parentId")) {
-                channel.setConversationId(update_fields.getProperty("parentId"), update_fields.getProperty("conversationId"));
-            }
-            if (update_fields.containsKey("demoted")) {
-                channel.setDemoted(Boolean.parseBoolean(update_fields.getProperty("demoted")));
-            }
-            if (update_fields.containsKey("importantConvo")) {
-                channel.setImportantConversation(Boolean.parseBoolean(update_fields.getProperty("importantConvo")));
-            }
-            if (update_fields.containsKey("lastNotificationUpdateTimeMs")) {
-                channel.setLastNotificationUpdateTimeMs(Long.parseLong(update_fields.getProperty("lastNotificationUpdateTimeMs")));
+            List<String> changed = patch.apply(channel);
+            if (changed.isEmpty()) {
+                System.out.println("Notification Channel already up to date, nothing changed");
+                return true;
             }
 
+            int uid = getPackageUid(pkg);
             notificationManager.updateNotificationChannelForPackage(pkg, uid, channel);
-            System.out.println("Updated Notification Channel:\n");
+            System.out.println("Changed fields: " + String.join(", ", changed));
+            System.out.println(IpcPlan.label("Updated Notification Channel:\n"));
             // System.out.println(channel.toJson());
             System.out.println(channel.toString());
-
+            return true;
         // } catch (RemoteException | JSONException e) {
         } catch (RemoteException e) {
             e.printStackTrace();
+            return false;
         }
     }
 
-    private static void updateNotificationChannelGroupForPackage(String pkg, String channelGroupId, Properties update_fields) {
+    /**
+     * Applies the patch to every channel whose id matches {@code channelIds} in each of the given
+     * packages. Each package costs one UID lookup, one channel list fetch and one update per
+     * channel that actually changes, all in one {@link ChannelTransaction}.
+     *
+     * @return false if any package could not be updated
+     */
+    private static boolean updateNotificationChannels(List<String> packages, final Pattern channelIds, final ChannelPatch patch, int threads) {
+        final INotificationManager notificationManager = getNotificationManagerService();
+        // updated, unchanged; PackageFanOut reports failed packages itself
+        final int[] counts = new int[2];
+        boolean complete = PackageFanOut.run(packages, threads,
+                pkg -> {
+                    int uid = getPackageUid(pkg);
+                    if (uid < 0) {
+                        return null;
+                    }
+                    final List<NotificationChannel> list = notificationManager.getNotificationChannelsForPackage(pkg, uid, false).getList();
+                    return ChannelTransaction.run(notificationManager, pkg, uid, transaction -> {
+                        PackageResult result = new PackageResult();
+                        for (NotificationChannel channel : list) {
+                            if (!channelIds.matcher(channel.getId()).matches()) {
+                                continue;
+                            }
+                            transaction.capture(channel);
+                            List<String> changed = patch.apply(channel);
+                            if (changed.isEmpty()) {
+                                result.unchanged++;
+                                continue;
+                            }
+                            transaction.update(channel);
+                            result.updated.add("Updated: pkg=\"" + pkg + "\" channelId=\"" + channel.getId() + "\" fields=" + String.join(",", changed));
+                        }
+                        return result;
+                    });
+                },
+                (pkg, result) -> {
+                    if (result == null) {
+                        System.err.println("Skipped: pkg=\"" + pkg + "\" is not installed");
+                        return;
+                    }
+                    result.print();
+                    counts[0] += result.updated.size();
+                    counts[1] += result.unchanged;
+                });
+        System.out.println(IpcPlan.label("Updated " + counts[0] + " Notification Channel(s) in " + packages.size() + " package(s), " + counts[1] + " already up to date"));
+        return complete;
+    }
+
+    private static boolean updateNotificationChannelGroupForPackage(String pkg, String channelGroupId, Properties update_fields) {
         INotificationManager notificationManager = getNotificationManagerService();
-        IPackageManager packageManager = getPackageManagerService();
         try {
-            int uid = packageManager.getPackageUid(pkg, 0, 0);
+            int uid = getPackageUid(pkg);
             NotificationChannelGroup channelGroup = notificationManager.getNotificationChannelGroupForPackage(channelGroupId, pkg, uid);
 
+            List<String> changed = new ArrayList<>();
             if (update_fields.containsKey("description")) {
-                channelGroup.setDescription(update_fields.getProperty("description"));
+                String description = update_fields.getProperty("description");
+                if (!description.equals(channelGroup.getDescription())) {
+                    channelGroup.setDescription(description);
+                    changed.add("description");
+                }
             }
             if (update_fields.containsKey("blocked")) {
-                channelGroup.setBlocked(Boolean.parseBoolean(update_fields.getProperty("blocked")));
+                boolean blocked = Boolean.parseBoolean(update_fields.getProperty("blocked"));
+                if (blocked != channelGroup.isBlocked()) {
+                    channelGroup.setBlocked(blocked);
+                    changed.add("blocked");
+                }
+            }
+            if (changed.isEmpty()) {
+                System.out.println("Notification Channel Group already up to date, nothing changed");
+                return true;
             }
 
             notificationManager.updateNotificationChannelGroupForPackage(pkg, uid, channelGroup);
-            System.out.println("Updated Notification Channel Group:\n");
+            System.out.println("Changed fields: " + String.join(", ", changed));
+            System.out.println(IpcPlan.label("Updated Notification Channel Group:\n"));
             // System.out.println(channelGroup.toJson());
             System.out.println(channelGroup.toString());
-
+            return true;
         // } catch (RemoteException | JSONException e) {
         } catch (RemoteException e) {
             e.printStackTrace();
+            return false;
         }
     }
 
-    private static void unlockAllNotificationChannelsForPackage(String pkg) {
+    /**
+     * Prints channel, deleted and blocked channel counts per package and for the whole device,
+     * using only the counter calls instead of transferring the channel lists.
+     *
+     * @return false if any package could not be counted
+     */
+    private static boolean printNotificationChannelStats(List<String> packages, int threads) {
+        final INotificationManager notificationManager = getNotificationManagerService();
+        final long[] totals = new long[3];
+        System.out.println("pkg\tchannels\tdeleted\tblocked");
+        boolean complete = PackageFanOut.run(packages, threads,
+                pkg -> {
+                    int uid = getPackageUid(pkg);
+                    if (uid < 0) {
+                        return null;
+                    }
+                    return new int[] {
+                        notificationManager.getNumNotificationChannelsForPackage(pkg, uid, false),
+                        notificationManager.getDeletedChannelCount(pkg, uid),
+                        notificationManager.getBlockedChannelCount(pkg, uid)
+                    };
+                },
+                (pkg, counts) -> {
+                    // packages without any channels would only be noise
+                    if (counts == null || (counts[0] == 0 && counts[1] == 0)) {
+                        return;
+                    }
+                    System.out.println(pkg + "\t" + counts[0] + "\t" + counts[1] + "\t" + counts[2]);
+                    for (int i = 0; i < totals.length; i++) {
+                        totals[i] += counts[i];
+                    }
+                });
+        System.out.println("total\t" + totals[0] + "\t" + totals[1] + "\t" + totals[2]);
+        return complete;
+    }
+
+    private static boolean unlockAllNotificationChannelsForPackage(String pkg) {
         INotificationManager notificationManager = getNotificationManagerService();
-        IPackageManager packageManager = getPackageManagerService();
         try {
-            int uid = packageManager.getPackageUid(pkg, 0, 0);
+            int uid = getPackageUid(pkg);
             ParceledListSlice<NotificationChannel> channels = notificationManager.getNotificationChannelsForPackage(pkg, uid, false);
             final List<NotificationChannel> list = channels.getList();
-            for (NotificationChannel channel : list) {
-                channel.setBlockable(true);
-                notificationManager.updateNotificationChannelForPackage(pkg, uid, channel);
-                System.out.println("Unlocked: channelId=\"" + channel.getId() + "\"");
-            }
+            int unlocked = ChannelTransaction.run(notificationManager, pkg, uid, transaction -> {
+                int count = 0;
+                for (NotificationChannel channel : list) {
+                    // Already blockable channels would be written back unchanged
+                    if (channel.isBlockable()) {
+                        continue;
+                    }
+                    transaction.capture(channel);
+                    channel.setBlockable(true);
+                    transaction.update(channel);
+                    System.out.println(IpcPlan.label("Unlocked: channelId=\"" + channel.getId() + "\""));
+                    count++;
+                }
+                return count;
+            });
+            System.out.println(IpcPlan.label("Unlocked " + unlocked + " of " + list.size() + " Notification Channel(s), " + (list.size() - unlocked) + " already unlocked"));
+            return true;
         } catch (RemoteException e) {
             e.printStackTrace();
+            return false;
         }
     }
 
-    public static void main(String[] args) throws ParseException {
+    public static void main(String[] args) {
+        int status = run(args);
+        UidIndex.saveAll();
+        if (status != 0) {
+            System.exit(status);
+        }
+    }
+
+    /**
+     * Parses and executes a single command line, returning its exit status. Used directly by
+     * {@link #main} and once per command by {@link CommandServer}.
+     */
+    static int run(String[] args) {
         Option helpCmd = Option.builder("h")
                                .longOpt("help")
                                .desc("Show help info")
                                .build();
 
         Option getCmd = Option.builder("get")
-                              .desc("Get a specific Notification Channel or Group by using: -pkg <package> -id <channel_id> [-G] -get\nAlternatively, omit -id to get all Notification Channels/Groups for the given package: -pkg <package> [-D] [-G] -get")
+                              .desc("Get a specific Notification Channel or Group by using: -pkg <package> -id <channel_id> [-G] -get\nAlternatively, omit -id to get all Notification Channels/Groups for the given package: -pkg <package> [-D] [-G] -get\nOr list every package on the device: -A [-D] [-G] [-threads <count>] -get\nAdd -json or -columns for machine readable output")
                               .build();
 
         Option useChannelGroupsFlag = Option.builder("G")
@@ -317,27 +547,138 @@ public class Main {
                                           .desc("Use when calling -get without an -id (-pkg only) to include a package's deleted Notification Channels")
                                           .build();
 
+        Option allPackagesFlag = Option.builder("A")
+                                       .longOpt("allPackages")
+                                       .hasArg(false)
+                                       .desc("Use with -get instead of -pkg to list the Notification Channels/Groups of every installed package")
+                                       .build();
+
+        Option jsonFlag = Option.builder("json")
+                                .hasArg(false)
+                                .desc("Use with -get to print newline-delimited JSON, one Notification Channel or Group per line")
+                                .build();
+
+        Option treeFlag = Option.builder("tree")
+                                .hasArg(false)
+                                .desc("Use with -get (-pkg or -A) to print each Notification Channel Group followed by its channels, fetched together in one call per package")
+                                .build();
+
+        Option columnsOpt = Option.builder("columns")
+                                  .argName("column,...")
+                                  .hasArg(true)
+                                  .desc("Use with -get to print only the given columns as tab separated values, e.g. -columns pkg,id,importance,group\nChannel columns are pkg, id, userLockedFields and the keys listed by -fields; group columns (-G) are pkg, id, name, description, blocked, userLockedFields and channels")
+                                  .build();
+
+        Option whereOpt = Option.builder("where")
+                                .argName("expression")
+                                .hasArg(true)
+                                .desc("Use with -get to only list the Notification Channels matching an expression over pkg, id and the keys listed by -fields, e.g. -where \"importance>=3 && !showBadge\"\nSupports ==, !=, <, <=, >, >=, !, && and || as well as parentheses")
+                                .build();
+
         Option setCmd = Option.builder("set")
                                  .argName("update_fields")
                                  .hasArgs()
                                  .valueSeparator()
-                                 .desc("Modify a Notification Channel or Group: -pkg <package> -id <channel_id> -set <update_fields>\nFor info on <update_fields> use: -fields")
+                                 .desc("Modify a Notification Channel or Group: -pkg <package> -id <channel_id> -set <update_fields>\n-pkg also takes a comma separated list of packages and globs, and -id a glob such as '*', to patch many channels at once\nFor info on <update_fields> use: -fields")
                                  .build();
 
         Option fieldsInfoCmd = Option.builder("fields")
                                      .desc("Print the list of modifiable fields for use with -set\n")
                                      .build();
 
+        Option conversationsCmd = Option.builder("conversations")
+                                        .argName("update_fields")
+                                        .hasArgs()
+                                        .optionalArg(true)
+                                        .valueSeparator()
+                                        .desc("List the conversation channels of every package with a single call, or only of -pkg: [-pkg <package>] [-important] [-where <expression>] -conversations\nGive demoted=<bool> and/or importantConvo=<bool> to change every listed conversation, writing one package at a time: -conversations demoted=true")
+                                        .build();
+
+        Option importantFlag = Option.builder("important")
+                                     .hasArg(false)
+                                     .desc("Use with -conversations to only include important conversations")
+                                     .build();
+
+        Option pkgSetCmd = Option.builder("pkgset")
+                                 .argName("settings")
+                                 .hasArgs()
+                                 .valueSeparator()
+                                 .desc("Change package-wide notification settings of -A or of -pkg, which may be a comma separated list of packages and globs: (-A | -pkg <packages>) [-threads <count>] -pkgset key=value ...\nKeys: " + PackageSettings.keys() + " (bubbles: 0 = none, 1 = all, 2 = selected)")
+                                 .build();
+
+        Option statsCmd = Option.builder("stats")
+                                .desc("Print the number of Notification Channels, deleted channels and blocked channels of every package, or only of -pkg, followed by the device total: [-pkg <package>] [-threads <count>] -stats\nOnly the counts are transferred, never the channels themselves")
+                                .build();
+
         Option unlockCmd = Option.builder("unlock")
                                      .desc("Unlock the Settings UI for all Notification Channels of a given package: -pkg <package> -unlock")
                                      .build();
 
+        Option applyCmd = Option.builder("apply")
+                                .argName("plan")
+                                .hasArg(true)
+                                .desc("Apply a plan file of \"<package> <channel_id> key=value ...\" lines (\"-\" reads stdin), using the same keys as -set\nEach package's channels are fetched once and every listed channel is updated with a single call")
+                                .build();
+
+        Option policyCmd = Option.builder("policy")
+                                 .argName("file")
+                                 .hasArg(true)
+                                 .desc("Enforce a policy file of \"<package_glob> <channel_pattern> key=value ...\" rules (\"-\" reads stdin) on every package, or only on -pkg: [-pkg <packages>] [-threads <count>] -policy <file>\nChannel patterns are * or terms like promo|marketing matching anywhere in the channel id; later rules override earlier ones")
+                                 .build();
+
+        Option watchOpt = Option.builder("watch")
+                                .argName("seconds")
+                                .hasArg(true)
+                                .desc("Use with -policy to keep enforcing it every <seconds> until killed; packages are only fetched again after an app update or when their channel count changed")
+                                .type(Number.class)
+                                .build();
+
+        Option planFlag = Option.builder("plan")
+                                .hasArg(false)
+                                .desc("Dry run: resolve targets and compare them with the current state, but write nothing and print the binder calls the command would make, by method")
+                                .build();
+
+        Option exportCmd = Option.builder("export")
+                                 .argName("file")
+                                 .hasArg(true)
+                                 .desc("Write the Notification Channels and Groups of every package, or only of -pkg, to an XML snapshot (\"-\" writes stdout): [-pkg <package>] [-D] [-threads <count>] -export <file>")
+                                 .build();
+
+        Option importCmd = Option.builder("import")
+                                 .argName("file")
+                                 .hasArg(true)
+                                 .desc("Restore the Notification Channels and Groups of every installed package, or only of -pkg, from an XML snapshot (\"-\" reads stdin): [-pkg <package>] -import <file>")
+                                 .build();
+
+        Option repoOpt = Option.builder("repo")
+                               .argName("dir")
+                               .hasArg(true)
+                               .desc("Use with -export/-import to store snapshots in a content-addressed repository instead of a single XML file; the file argument then names the snapshot's manifest\nEvery distinct channel or group is stored once, however many snapshots contain it")
+                               .type(String.class)
+                               .build();
+
+        Option serverCmd = Option.builder("server")
+                                 .argName("port")
+                                 .hasArg(true)
+                                 .optionalArg(true)
+                                 .desc("Stay alive and execute one command per line, read from stdin or, if a port is given, from connections to 127.0.0.1:<port>\nEach command is answered with a \"" + CommandServer.STATUS_PREFIX + "<status>\" line. \"flush\" forgets the UID index, \"quit\" ends the session and \"shutdown\" stops a socket server")
+                                 .type(Number.class)
+                                 .build();
+
         OptionGroup optionCmds = new OptionGroup()
                                       .addOption(helpCmd)
                                       .addOption(getCmd)
                                       .addOption(setCmd)
                                       .addOption(fieldsInfoCmd)
-                                      .addOption(unlockCmd);
+                                      .addOption(conversationsCmd)
+                                      .addOption(pkgSetCmd)
+                                      .addOption(statsCmd)
+                                      .addOption(unlockCmd)
+                                      .addOption(applyCmd)
+                                      .addOption(policyCmd)
+                                      .addOption(exportCmd)
+                                      .addOption(importCmd)
+                                      .addOption(serverCmd);
         optionCmds.setRequired(true);
 
         Option pkgOpt = Option.builder("pkg")
@@ -354,65 +695,352 @@ public class Main {
                                     .type(String.class)
                                     .build();
 
+        Option threadsOpt = Option.builder("threads")
+                                  .argName("count")
+                                  .hasArg(true)
+                                  .desc("Number of packages to query concurrently when used with -A (default: " + DEFAULT_THREADS + ")")
+                                  .type(Number.class)
+                                  .build();
+
+        Option userOpt = Option.builder("user")
+                               .argName("id|all")
+                               .hasArg(true)
+                               .desc("Run the command for the given user(s) instead of user 0: a user id, a comma separated list of ids, or \"all\" for every user including work profiles\nSeveral users are processed concurrently and their output is printed user by user")
+                               .build();
+
         Options options = new Options()
                                 .addOptionGroup(optionCmds)
                                 .addOption(pkgOpt)
                                 .addOption(channelIdOpt)
                                 .addOption(useChannelGroupsFlag)
-                                .addOption(includeDeletedFlag);
+                                .addOption(includeDeletedFlag)
+                                .addOption(allPackagesFlag)
+                                .addOption(threadsOpt)
+                                .addOption(jsonFlag)
+                                .addOption(columnsOpt)
+                                .addOption(whereOpt)
+                                .addOption(treeFlag)
+                                .addOption(userOpt)
+                                .addOption(importantFlag)
+                                .addOption(watchOpt)
+                                .addOption(planFlag)
+                                .addOption(repoOpt);
 
         CommandLineParser parser = new DefaultParser();
         try {
             CommandLine line = parser.parse(options, args);
+            if (line.hasOption(planFlag.getOpt()) && !IpcPlan.isActive()) {
+                if (line.hasOption(serverCmd.getOpt()) || line.hasOption(watchOpt.getOpt())) {
+                    System.err.println("Conflicting args: " + planFlag.getOpt() + " cannot be combined with " + serverCmd.getOpt() + " or " + watchOpt.getOpt());
+                    return 1;
+                }
+                IpcPlan plan = new IpcPlan();
+                plan.install();
+                int status;
+                try {
+                    status = run(args);
+                } finally {
+                    plan.uninstall();
+                    // UIDs resolved while planning are not written to the index files
+                    UidIndex.discard();
+                }
+                plan.print();
+                return status;
+            }
+            if (line.hasOption(userOpt.getOpt()) && !UserRunner.isDispatched()) {
+                if (line.hasOption(serverCmd.getOpt())) {
+                    System.err.println("Conflicting args: " + userOpt.getOpt() + ", " + serverCmd.getOpt());
+                    return 1;
+                }
+                try {
+                    List<Integer> users = UserRunner.parseUsers(line.getOptionValue(userOpt.getOpt()));
+                    // output of several users is only printed once each user is done
+                    if (users.size() > 1 && line.hasOption(watchOpt.getOpt())) {
+                        System.err.println("Conflicting args: " + watchOpt.getOpt() + " can only run for a single " + userOpt.getOpt());
+                        return 1;
+                    }
+                    return UserRunner.run(users, args);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    return 1;
+                }
+            }
             if (line.hasOption(getCmd.getOpt())) {
-                if (!line.hasOption(pkgOpt.getOpt())) {
+                boolean allPackages = line.hasOption(allPackagesFlag.getOpt());
+                ListingWriter writer;
+                boolean tree = line.hasOption(treeFlag.getOpt());
+                if (tree) {
+                    if (line.hasOption(jsonFlag.getOpt()) || line.hasOption(columnsOpt.getOpt()) || line.hasOption(whereOpt.getOpt()) || line.hasOption(channelIdOpt.getOpt())) {
+                        System.err.println("Conflicting args: " + treeFlag.getOpt() + " cannot be combined with " + jsonFlag.getOpt() + ", " + columnsOpt.getOpt() + ", " + whereOpt.getOpt() + " or " + channelIdOpt.getOpt());
+                        return 1;
+                    }
+                    writer = new TreeListingWriter(allPackages);
+                } else if (line.hasOption(columnsOpt.getOpt())) {
+                    if (line.hasOption(jsonFlag.getOpt())) {
+                        System.err.println("Conflicting args: " + jsonFlag.getOpt() + ", " + columnsOpt.getOpt());
+                        return 1;
+                    }
+                    boolean groups = line.hasOption(useChannelGroupsFlag.getOpt());
+                    writer = TsvListingWriter.create(System.out, line.getOptionValue(columnsOpt.getOpt()), groups);
+                } else if (line.hasOption(jsonFlag.getOpt())) {
+                    writer = new NdjsonListingWriter(System.out);
+                } else {
+                    writer = new TextListingWriter(allPackages);
+                }
+                ChannelFilter filter = null;
+                if (line.hasOption(whereOpt.getOpt())) {
+                    if (line.hasOption(useChannelGroupsFlag.getOpt())) {
+                        System.err.println("Conflicting args: " + whereOpt.getOpt() + ", " + useChannelGroupsFlag.getOpt());
+                        return 1;
+                    }
+                    filter = ChannelFilter.compile(line.getOptionValue(whereOpt.getOpt()));
+                }
+                if (allPackages) {
+                    boolean includeDeleted = line.hasOption(includeDeletedFlag.getOpt());
+                    Number threads = (Number) line.getParsedOptionValue(threadsOpt.getOpt());
+                    int threadCount = threads != null ? threads.intValue() : DEFAULT_THREADS;
+                    boolean complete = tree || line.hasOption(useChannelGroupsFlag.getOpt())
+                            ? listNotificationChannelGroupsForAllPackages(includeDeleted, tree, threadCount, writer)
+                            : listNotificationChannelsForAllPackages(includeDeleted, threadCount, filter, writer);
+                    if (!complete) {
+                        return 1;
+                    }
+                } else if (!line.hasOption(pkgOpt.getOpt())) {
                     System.err.println("Missing arg required: " + pkgOpt.getOpt());
-                    System.exit(1);
+                    return 1;
                 } else if (!line.hasOption(channelIdOpt.getOpt())) {
                     String pkg = line.getOptionValue(pkgOpt.getOpt());
                     boolean includeDeleted = line.hasOption(includeDeletedFlag.getOpt()) ? true : false;
-                    if (line.hasOption(useChannelGroupsFlag.getOpt())) {
-                        listNotificationChannelGroupsForPackage(pkg, includeDeleted);
-                    } else {
-                        listNotificationChannelsForPackage(pkg, includeDeleted);
+                    boolean success = tree || line.hasOption(useChannelGroupsFlag.getOpt())
+                            ? listNotificationChannelGroupsForPackage(pkg, includeDeleted, tree, writer)
+                            : listNotificationChannelsForPackage(pkg, includeDeleted, filter, writer);
+                    if (!success) {
+                        return 1;
                     }
                 } else {
                     String pkg = line.getOptionValue(pkgOpt.getOpt());
                     String channelId = line.getOptionValue(channelIdOpt.getOpt());
-                    if (line.hasOption(useChannelGroupsFlag.getOpt())) {
-                        getNotificationChannelGroupForPackage(pkg, channelId);
-                    } else {
-                        getNotificationChannelForPackage(pkg, channelId);
+                    boolean success = line.hasOption(useChannelGroupsFlag.getOpt())
+                            ? getNotificationChannelGroupForPackage(pkg, channelId, writer)
+                            : getNotificationChannelForPackage(pkg, channelId, filter, writer);
+                    if (!success) {
+                        return 1;
                     }
                 }
             } else if (line.hasOption(setCmd.getOpt())) {
                 if (!line.hasOption(pkgOpt.getOpt()) || !line.hasOption(channelIdOpt.getOpt())) {
                     System.err.println("Missing arg(s) required: " + pkgOpt.getOpt() + ", " + channelIdOpt.getOpt());
-                    System.exit(1);
+                    return 1;
                 }
                 String pkg = line.getOptionValue(pkgOpt.getOpt());
                 String channelId = line.getOptionValue(channelIdOpt.getOpt());
                 Properties properties = line.getOptionProperties(setCmd.getOpt());
+                boolean wildcard = pkg.indexOf(',') >= 0 || PackageSelector.isGlob(pkg) || PackageSelector.isGlob(channelId);
                 if (line.hasOption(useChannelGroupsFlag.getOpt())) {
-                    updateNotificationChannelGroupForPackage(pkg, channelId, properties);
+                    if (wildcard) {
+                        System.err.println("Conflicting args: " + useChannelGroupsFlag.getOpt() + " takes a single " + pkgOpt.getOpt() + " and " + channelIdOpt.getOpt() + ", without globs");
+                        return 1;
+                    }
+                    if (!updateNotificationChannelGroupForPackage(pkg, channelId, properties)) {
+                        return 1;
+                    }
+                } else if (wildcard) {
+                    ChannelPatch patch = ChannelPatch.compile(properties);
+                    Number threads = (Number) line.getParsedOptionValue(threadsOpt.getOpt());
+                    try {
+                        List<String> packages = selectPackages(pkg);
+                        Pattern channelIds = Pattern.compile(PackageSelector.globToRegex(channelId));
+                        if (!updateNotificationChannels(packages, channelIds, patch, threads != null ? threads.intValue() : DEFAULT_THREADS)) {
+                            return 1;
+                        }
+                    } catch (RemoteException e) {
+                        e.printStackTrace();
+                        return 1;
+                    }
                 } else {
-                    updateNotificationChannelForPackage(pkg, channelId, properties);
+                    if (!updateNotificationChannelForPackage(pkg, channelId, ChannelPatch.compile(properties))) {
+                        return 1;
+                    }
+                }
+            } else if (line.hasOption(conversationsCmd.getOpt())) {
+                ChannelFilter filter = line.hasOption(whereOpt.getOpt()) ? ChannelFilter.compile(line.getOptionValue(whereOpt.getOpt())) : null;
+                Properties properties = line.getOptionProperties(conversationsCmd.getOpt());
+                try {
+                    Conversations conversations = Conversations.fetch(line.getOptionValue(pkgOpt.getOpt()), line.hasOption(importantFlag.getOpt()), filter);
+                    if (properties.isEmpty()) {
+                        ListingWriter writer;
+                        if (line.hasOption(columnsOpt.getOpt())) {
+                            writer = TsvListingWriter.create(System.out, line.getOptionValue(columnsOpt.getOpt()), false);
+                        } else if (line.hasOption(jsonFlag.getOpt())) {
+                            writer = new NdjsonListingWriter(System.out);
+                        } else {
+                            writer = new TextListingWriter(!line.hasOption(pkgOpt.getOpt()));
+                        }
+                        conversations.list(writer);
+                    } else {
+                        Number threads = (Number) line.getParsedOptionValue(threadsOpt.getOpt());
+                        if (!conversations.update(properties, threads != null ? threads.intValue() : DEFAULT_THREADS)) {
+                            return 1;
+                        }
+                    }
+                } catch (RemoteException e) {
+                    e.printStackTrace();
+                    return 1;
+                }
+            } else if (line.hasOption(pkgSetCmd.getOpt())) {
+                if (!line.hasOption(pkgOpt.getOpt()) && !line.hasOption(allPackagesFlag.getOpt())) {
+                    System.err.println("Missing arg required: " + pkgOpt.getOpt() + " or " + allPackagesFlag.getOpt());
+                    return 1;
+                }
+                PackageSettings settings = new PackageSettings(line.getOptionProperties(pkgSetCmd.getOpt()));
+                Number threads = (Number) line.getParsedOptionValue(threadsOpt.getOpt());
+                try {
+                    List<String> packages = line.hasOption(allPackagesFlag.getOpt())
+                            ? getAllPackages()
+                            : selectPackages(line.getOptionValue(pkgOpt.getOpt()));
+                    if (!settings.apply(packages, threads != null ? threads.intValue() : DEFAULT_THREADS)) {
+                        return 1;
+                    }
+                } catch (RemoteException e) {
+                    e.printStackTrace();
+                    return 1;
+                }
+            } else if (line.hasOption(statsCmd.getOpt())) {
+                Number threads = (Number) line.getParsedOptionValue(threadsOpt.getOpt());
+                int threadCount = threads != null ? threads.intValue() : DEFAULT_THREADS;
+                try {
+                    List<String> packages = line.hasOption(pkgOpt.getOpt())
+                            ? Collections.singletonList(line.getOptionValue(pkgOpt.getOpt()))
+                            : getAllPackages();
+                    if (!printNotificationChannelStats(packages, threadCount)) {
+                        return 1;
+                    }
+                } catch (RemoteException e) {
+                    e.printStackTrace();
+                    return 1;
                 }
             } else if (line.hasOption(unlockCmd.getOpt())) {
                 if (!line.hasOption(pkgOpt.getOpt())) {
                     System.err.println("Missing arg required: " + pkgOpt.getOpt());
-                    System.exit(1);
+                    return 1;
                 }
                 String pkg = line.getOptionValue(pkgOpt.getOpt());
-                unlockAllNotificationChannelsForPackage(pkg);
+                if (!unlockAllNotificationChannelsForPackage(pkg)) {
+                    return 1;
+                }
+            } else if (line.hasOption(applyCmd.getOpt())) {
+                try {
+                    BatchPlan plan = BatchPlan.parse(line.getOptionValue(applyCmd.getOpt()));
+                    if (!plan.execute()) {
+                        return 1;
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    return 1;
+                }
+            } else if (line.hasOption(policyCmd.getOpt())) {
+                Number threads = (Number) line.getParsedOptionValue(threadsOpt.getOpt());
+                Number watch = (Number) line.getParsedOptionValue(watchOpt.getOpt());
+                try {
+                    Policy policy = Policy.parse(line.getOptionValue(policyCmd.getOpt()));
+                    if (watch != null) {
+                        if (watch.longValue() <= 0) {
+                            System.err.println("Invalid arg: " + watchOpt.getOpt() + " must be a positive number of seconds");
+                            return 1;
+                        }
+                        PolicyWatcher watcher = new PolicyWatcher(policy, line.getOptionValue(pkgOpt.getOpt()), threads != null ? threads.intValue() : DEFAULT_THREADS);
+                        watcher.run(watch.longValue() * 1000);
+                        return 0;
+                    }
+                    List<String> packages = line.hasOption(pkgOpt.getOpt())
+                            ? selectPackages(line.getOptionValue(pkgOpt.getOpt()))
+                            : getAllPackages();
+                    if (!policy.enforce(packages, threads != null ? threads.intValue() : DEFAULT_THREADS)) {
+                        return 1;
+                    }
+                } catch (IOException | RemoteException e) {
+                    e.printStackTrace();
+                    return 1;
+                }
+            } else if (line.hasOption(exportCmd.getOpt())) {
+                String path = line.getOptionValue(exportCmd.getOpt());
+                boolean includeDeleted = line.hasOption(includeDeletedFlag.getOpt());
+                Number threads = (Number) line.getParsedOptionValue(threadsOpt.getOpt());
+                int threadCount = threads != null ? threads.intValue() : DEFAULT_THREADS;
+                if (line.hasOption(repoOpt.getOpt())) {
+                    try {
+                        List<String> packages = line.hasOption(pkgOpt.getOpt())
+                                ? Collections.singletonList(line.getOptionValue(pkgOpt.getOpt()))
+                                : getAllPackages();
+                        if (!new SnapshotStore(new File(line.getOptionValue(repoOpt.getOpt()))).export(path, packages, includeDeleted, threadCount)) {
+                            return 1;
+                        }
+                    } catch (IOException | RemoteException e) {
+                        e.printStackTrace();
+                        return 1;
+                    }
+                } else {
+                    try (OutputStream os = openOutput(path)) {
+                        List<String> packages = line.hasOption(pkgOpt.getOpt())
+                                ? Collections.singletonList(line.getOptionValue(pkgOpt.getOpt()))
+                                : getAllPackages();
+                        if (!Snapshot.export(new BufferedOutputStream(os, 64 * 1024), packages, includeDeleted, threadCount)) {
+                            return 1;
+                        }
+                    } catch (IOException | RemoteException e) {
+                        e.printStackTrace();
+                        return 1;
+                    }
+                }
+            } else if (line.hasOption(importCmd.getOpt())) {
+                String path = line.getOptionValue(importCmd.getOpt());
+                Set<String> packages = line.hasOption(pkgOpt.getOpt())
+                        ? Collections.singleton(line.getOptionValue(pkgOpt.getOpt()))
+                        : null;
+                if (line.hasOption(repoOpt.getOpt())) {
+                    try {
+                        if (!new SnapshotStore(new File(line.getOptionValue(repoOpt.getOpt()))).importFrom(path, packages)) {
+                            return 1;
+                        }
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                        return 1;
+                    }
+                } else {
+                    try (InputStream is = openInput(path)) {
+                        if (!Snapshot.importFrom(new BufferedInputStream(is, 64 * 1024), packages)) {
+                            return 1;
+                        }
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                        return 1;
+                    }
+                }
             } else if (line.hasOption(fieldsInfoCmd.getOpt())) {
                 printUpdateFieldsInfo();
+            } else if (line.hasOption(serverCmd.getOpt())) {
+                Number port = (Number) line.getParsedOptionValue(serverCmd.getOpt());
+                try {
+                    if (port != null) {
+                        CommandServer.serveSocket(port.intValue());
+                    } else {
+                        CommandServer.serveStdin();
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    return 1;
+                }
             } else {
                 printHelp(options);
             }
         } catch (ParseException e) {
             System.err.println("Parsing error, message:");
             System.err.println(e.getMessage());
+            return 1;
+        } catch (IllegalArgumentException e) {
+            System.err.println("ERROR: " + e.getMessage());
+            return 1;
         }
+        return 0;
     }
 }
@@ -0,0 +1,81 @@
+package io.github.nihilian.ncheditor;
+
+import android.app.NotificationChannel;
+import android.app.NotificationChannelGroup;
+
+import java.io.PrintStream;
+import java.util.List;
+
+/**
+ * Machine readable -get output: one JSON object per line, written field by field from the
+ * channel getters without building a JSONObject or the {@code toString()} form.
+ */
+final class NdjsonListingWriter implements ListingWriter {
+    private final OutputBuffer out;
+
+    NdjsonListingWriter(PrintStream out) {
+        this.out = new OutputBuffer(out);
+    }
+
+    @Override
+    public void channel(String pkg, int index, int count, NotificationChannel channel) {
+        out.append("{\"pkg\":").appendJson(pkg);
+        out.append(",\"id\":").appendJson(channel.getId());
+        for (ChannelField field : ChannelField.values()) {
+            out.append(",\"").append(field.key()).append("\":");
+            Object value = field.read(channel);
+            if (value == null) {
+                out.append("null");
+                continue;
+            }
+            switch (field.type()) {
+                case BOOLEAN:
+                    out.append((boolean) (Boolean) value);
+                    break;
+                case INT:
+                case LONG:
+                    out.append(((Number) value).longValue());
+                    break;
+                case LONG_ARRAY:
+                    long[] values = (long[]) value;
+                    out.append('[');
+                    for (int i = 0; i < values.length; i++) {
+                        if (i > 0) {
+                            out.append(',');
+                        }
+                        out.append(values[i]);
+                    }
+                    out.append(']');
+                    break;
+                default:
+                    out.appendJson(value.toString());
+            }
+        }
+        out.append(",\"userLockedFields\":").append(channel.getUserLockedFields());
+        out.append("}\n");
+    }
+
+    @Override
+    public void group(String pkg, int index, int count, NotificationChannelGroup group) {
+        out.append("{\"pkg\":").appendJson(pkg);
+        out.append(",\"id\":").appendJson(group.getId());
+        out.append(",\"name\":").appendJson(group.getName());
+        out.append(",\"description\":").appendJson(group.getDescription());
+        out.append(",\"blocked\":").append(group.isBlocked());
+        out.append(",\"userLockedFields\":").append(group.getUserLockedFields());
+        out.append(",\"channels\":[");
+        List<NotificationChannel> channels = group.getChannels();
+        for (int i = 0; i < channels.size(); i++) {
+            if (i > 0) {
+                out.append(',');
+            }
+            out.appendJson(channels.get(i).getId());
+        }
+        out.append("]}\n");
+    }
+
+    @Override
+    public void flush() {
+        out.flush();
+    }
+}
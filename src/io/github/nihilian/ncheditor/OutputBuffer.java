@@ -0,0 +1,163 @@
+package io.github.nihilian.ncheditor;
+
+import java.io.PrintStream;
+
+/**
+ * Encodes text as UTF-8 straight into a large byte array and hands it to the output stream in
+ * big chunks, avoiding intermediate Strings and per-line stream overhead for bulk listings.
+ */
+final class OutputBuffer {
+    private static final int DEFAULT_CAPACITY = 64 * 1024;
+    private static final byte[] DIGITS = "0123456789abcdef".getBytes();
+
+    private final PrintStream out;
+    private final byte[] buffer;
+    private int position;
+
+    OutputBuffer(PrintStream out) {
+        this(out, DEFAULT_CAPACITY);
+    }
+
+    OutputBuffer(PrintStream out, int capacity) {
+        this.out = out;
+        this.buffer = new byte[capacity];
+    }
+
+    OutputBuffer append(char c) {
+        if (c < 0x80) {
+            ensure(1);
+            buffer[position++] = (byte) c;
+        } else if (c < 0x800) {
+            ensure(2);
+            buffer[position++] = (byte) (0xc0 | (c >> 6));
+            buffer[position++] = (byte) (0x80 | (c & 0x3f));
+        } else {
+            ensure(3);
+            buffer[position++] = (byte) (0xe0 | (c >> 12));
+            buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+            buffer[position++] = (byte) (0x80 | (c & 0x3f));
+        }
+        return this;
+    }
+
+    OutputBuffer append(CharSequence s) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                appendCodePoint(Character.toCodePoint(c, s.charAt(++i)));
+            } else {
+                append(c);
+            }
+        }
+        return this;
+    }
+
+    OutputBuffer append(long value) {
+        if (value == Long.MIN_VALUE) {
+            return append(Long.toString(value));
+        }
+        ensure(20);
+        if (value < 0) {
+            buffer[position++] = '-';
+            value = -value;
+        }
+        int start = position;
+        do {
+            buffer[position++] = DIGITS[(int) (value % 10)];
+            value /= 10;
+        } while (value != 0);
+        for (int i = start, j = position - 1; i < j; i++, j--) {
+            byte tmp = buffer[i];
+            buffer[i] = buffer[j];
+            buffer[j] = tmp;
+        }
+        return this;
+    }
+
+    OutputBuffer append(boolean value) {
+        return append(value ? "true" : "false");
+    }
+
+    /**
+     * Appends a quoted JSON string, or {@code null}.
+     */
+    OutputBuffer appendJson(CharSequence s) {
+        if (s == null) {
+            return append("null");
+        }
+        append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"':
+                    append('\\').append('"');
+                    break;
+                case '\\':
+                    append('\\').append('\\');
+                    break;
+                case '\n':
+                    append('\\').append('n');
+                    break;
+                case '\r':
+                    append('\\').append('r');
+                    break;
+                case '\t':
+                    append('\\').append('t');
+                    break;
+                default:
+                    if (c < 0x20) {
+                        append("\\u00").append((char) DIGITS[c >> 4]).append((char) DIGITS[c & 0xf]);
+                    } else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                        appendCodePoint(Character.toCodePoint(c, s.charAt(++i)));
+                    } else {
+                        append(c);
+                    }
+            }
+        }
+        return append('"');
+    }
+
+    /**
+     * Appends a TSV field, escaping tabs, line feeds, carriage returns and backslashes.
+     */
+    OutputBuffer appendTsv(CharSequence s) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '\t') {
+                append('\\').append('t');
+            } else if (c == '\n') {
+                append('\\').append('n');
+            } else if (c == '\r') {
+                append('\\').append('r');
+            } else if (c == '\\') {
+                append('\\').append('\\');
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                appendCodePoint(Character.toCodePoint(c, s.charAt(++i)));
+            } else {
+                append(c);
+            }
+        }
+        return this;
+    }
+
+    private void appendCodePoint(int codePoint) {
+        ensure(4);
+        buffer[position++] = (byte) (0xf0 | (codePoint >> 18));
+        buffer[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+        buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+        buffer[position++] = (byte) (0x80 | (codePoint & 0x3f));
+    }
+
+    private void ensure(int bytes) {
+        if (position + bytes > buffer.length) {
+            out.write(buffer, 0, position);
+            position = 0;
+        }
+    }
+
+    void flush() {
+        out.write(buffer, 0, position);
+        position = 0;
+        out.flush();
+    }
+}
@@ -0,0 +1,68 @@
+package io.github.nihilian.ncheditor;
+
+import android.os.RemoteException;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs a per-package task on a bounded pool of worker threads and hands the
+ * results back on the calling thread in the order the packages were given,
+ * so output stays stable no matter which binder call returns first.
+ */
+final class PackageFanOut {
+
+    interface Task<T> {
+        T run(String pkg) throws RemoteException;
+    }
+
+    interface Sink<T> {
+        void accept(String pkg, T result);
+    }
+
+    private PackageFanOut() {}
+
+    /**
+     * At most {@code threads * 2} packages are in flight at any time, which
+     * keeps memory flat when an early package is slow to answer.
+     *
+     * @return true if every package's result reached the sink, false if a
+     *         task failed or the calling thread was interrupted
+     */
+    static <T> boolean run(List<String> packages, int threads, final Task<T> task, Sink<T> sink) {
+        final int workers = Math.max(1, Math.min(threads, packages.size()));
+        final int window = workers * 2;
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        Deque<Future<T>> inFlight = new ArrayDeque<>(window);
+        boolean complete = true;
+        try {
+            int submitted = 0;
+            for (int i = 0; i < packages.size(); i++) {
+                while (submitted < packages.size() && submitted - i < window) {
+                    final String pkg = packages.get(submitted++);
+                    inFlight.addLast(pool.submit(() -> task.run(pkg)));
+                }
+                String pkg = packages.get(i);
+                try {
+                    sink.accept(pkg, inFlight.removeFirst().get());
+                } catch (ExecutionException e) {
+                    System.err.println("ERROR: failed to query package \"" + pkg + "\"");
+                    e.getCause().printStackTrace();
+                    complete = false;
+                }
+            }
+        } catch (InterruptedException e) {
+            System.err.println("ERROR: interrupted before every package was queried");
+            Thread.currentThread().interrupt();
+            complete = false;
+        } finally {
+            pool.shutdownNow();
+        }
+        return complete;
+    }
+}
@@ -0,0 +1,21 @@
+package io.github.nihilian.ncheditor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * What a multi-channel update did to one package, built on a {@link PackageFanOut} worker and
+ * printed on the calling thread.
+ */
+final class PackageResult {
+    // one "Updated: ..." line per written channel
+    final List<String> updated = new ArrayList<>();
+    // channels that matched but already held the requested values
+    int unchanged;
+
+    void print() {
+        for (String line : updated) {
+            System.out.println(IpcPlan.label(line));
+        }
+    }
+}
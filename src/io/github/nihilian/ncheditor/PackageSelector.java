@@ -0,0 +1,91 @@
+package io.github.nihilian.ncheditor;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * A comma separated list of package names and globs such as {@code com.vendor.*,com.example},
+ * where {@code *} matches any run of characters and {@code ?} a single one. Globs are
+ * compiled once into one pattern and matched against the installed packages.
+ */
+final class PackageSelector {
+    private final List<String> names = new ArrayList<>();
+    private final Pattern globs;
+
+    private PackageSelector(String spec) {
+        StringBuilder regex = new StringBuilder();
+        for (String part : spec.split(",")) {
+            part = part.trim();
+            if (part.isEmpty()) {
+                continue;
+            }
+            if (!isGlob(part)) {
+                names.add(part);
+                continue;
+            }
+            if (regex.length() > 0) {
+                regex.append('|');
+            }
+            regex.append(globToRegex(part));
+        }
+        globs = regex.length() > 0 ? Pattern.compile(regex.toString()) : null;
+    }
+
+    static PackageSelector parse(String spec) {
+        return new PackageSelector(spec);
+    }
+
+    static boolean isGlob(String s) {
+        return s.indexOf('*') >= 0 || s.indexOf('?') >= 0;
+    }
+
+    /**
+     * @return the regular expression for a glob, quoting everything but {@code *} and {@code ?}
+     */
+    static String globToRegex(String glob) {
+        StringBuilder regex = new StringBuilder();
+        int start = 0;
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (c == '*' || c == '?') {
+                if (i > start) {
+                    regex.append(Pattern.quote(glob.substring(start, i)));
+                }
+                regex.append(c == '*' ? ".*" : ".");
+                start = i + 1;
+            }
+        }
+        if (start < glob.length()) {
+            regex.append(Pattern.quote(glob.substring(start)));
+        }
+        return regex.toString();
+    }
+
+    /**
+     * @return whether the installed package list is needed to resolve this selector
+     */
+    boolean hasGlobs() {
+        return globs != null;
+    }
+
+    /**
+     * @param installed every installed package, only consulted for globs; may be null if
+     *                  {@link #hasGlobs()} is false
+     * @return the selected packages without duplicates, plain names first in the order given,
+     *         then glob matches in the order of {@code installed}
+     */
+    List<String> resolve(List<String> installed) {
+        Set<String> packages = new LinkedHashSet<>(names);
+        if (globs != null) {
+            for (String pkg : installed) {
+                if (globs.matcher(pkg).matches()) {
+                    packages.add(pkg);
+                }
+            }
+        }
+        return new ArrayList<>(packages);
+    }
+}
@@ -0,0 +1,171 @@
+package io.github.nihilian.ncheditor;
+
+import android.app.INotificationManager;
+
+import android.os.RemoteException;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * {@code -pkgset}: package-wide notification settings applied to many packages in one process.
+ * Every package's UID is resolved once, the current value is read where system_server offers a
+ * getter, and only differing settings are written. Packages run concurrently on the
+ * {@link PackageFanOut} workers.
+ */
+final class PackageSettings {
+
+    enum Setting {
+        ENABLED("enabled", false) {
+            @Override
+            Object read(INotificationManager notificationManager, String pkg, int uid) throws RemoteException {
+                return notificationManager.areNotificationsEnabledForPackage(pkg, uid);
+            }
+
+            @Override
+            void write(INotificationManager notificationManager, String pkg, int uid, Object value) throws RemoteException {
+                notificationManager.setNotificationsEnabledForPackage(pkg, uid, (Boolean) value);
+            }
+        },
+        // also fixes the package's importance so the app cannot ask for the permission again
+        ENABLED_WITH_IMPORTANCE_LOCK("enabledWithImportanceLock", false) {
+            @Override
+            Object read(INotificationManager notificationManager, String pkg, int uid) {
+                return null;
+            }
+
+            @Override
+            void write(INotificationManager notificationManager, String pkg, int uid, Object value) throws RemoteException {
+                notificationManager.setNotificationsEnabledWithImportanceLockForPackage(pkg, uid, (Boolean) value);
+            }
+        },
+        SHOW_BADGE("showBadge", false) {
+            @Override
+            Object read(INotificationManager notificationManager, String pkg, int uid) throws RemoteException {
+                return notificationManager.canShowBadge(pkg, uid);
+            }
+
+            @Override
+            void write(INotificationManager notificationManager, String pkg, int uid, Object value) throws RemoteException {
+                notificationManager.setShowBadge(pkg, uid, (Boolean) value);
+            }
+        },
+        // 0 = none, 1 = all, 2 = selected conversations only
+        BUBBLES("bubbles", true) {
+            @Override
+            Object read(INotificationManager notificationManager, String pkg, int uid) throws RemoteException {
+                return notificationManager.getBubblePreferenceForPackage(pkg, uid);
+            }
+
+            @Override
+            void write(INotificationManager notificationManager, String pkg, int uid, Object value) throws RemoteException {
+                notificationManager.setBubblesAllowed(pkg, uid, (Integer) value);
+            }
+        };
+
+        private final String key;
+        private final boolean isInt;
+
+        Setting(String key, boolean isInt) {
+            this.key = key;
+            this.isInt = isInt;
+        }
+
+        String key() {
+            return key;
+        }
+
+        /**
+         * @return the current value, or null if it cannot be read and must always be written
+         */
+        abstract Object read(INotificationManager notificationManager, String pkg, int uid) throws RemoteException;
+
+        abstract void write(INotificationManager notificationManager, String pkg, int uid, Object value) throws RemoteException;
+
+        Object parse(String value) {
+            if (!isInt) {
+                return Boolean.parseBoolean(value);
+            }
+            try {
+                return Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("\"" + key + "\" expects a number, got \"" + value + "\"");
+            }
+        }
+
+        static Setting forKey(String key) {
+            for (Setting setting : values()) {
+                if (setting.key.equals(key)) {
+                    return setting;
+                }
+            }
+            return null;
+        }
+    }
+
+    private final Map<Setting, Object> values = new EnumMap<>(Setting.class);
+
+    /**
+     * @throws IllegalArgumentException for unknown keys or unparsable values
+     */
+    PackageSettings(Properties properties) {
+        for (String key : properties.stringPropertyNames()) {
+            Setting setting = Setting.forKey(key);
+            if (setting == null) {
+                throw new IllegalArgumentException("unknown package setting \"" + key + "\", expected one of " + keys());
+            }
+            values.put(setting, setting.parse(properties.getProperty(key)));
+        }
+        if (values.isEmpty()) {
+            throw new IllegalArgumentException("no package settings given, expected one of " + keys());
+        }
+    }
+
+    static String keys() {
+        List<String> keys = new ArrayList<>();
+        for (Setting setting : Setting.values()) {
+            keys.add(setting.key());
+        }
+        return String.join(", ", keys);
+    }
+
+    /**
+     * @return false if any package could not be updated
+     */
+    boolean apply(List<String> packages, int threads) {
+        final INotificationManager notificationManager = Main.getNotificationManagerService();
+        // updated, unchanged; PackageFanOut reports failed packages itself
+        final int[] counts = new int[2];
+        boolean complete = PackageFanOut.run(packages, threads,
+                pkg -> {
+                    int uid = Main.getPackageUid(pkg);
+                    if (uid < 0) {
+                        return null;
+                    }
+                    List<String> changed = new ArrayList<>();
+                    for (Map.Entry<Setting, Object> entry : values.entrySet()) {
+                        Setting setting = entry.getKey();
+                        if (!entry.getValue().equals(setting.read(notificationManager, pkg, uid))) {
+                            setting.write(notificationManager, pkg, uid, entry.getValue());
+                            changed.add(setting.key());
+                        }
+                    }
+                    return changed;
+                },
+                (pkg, changed) -> {
+                    if (changed == null) {
+                        System.err.println("Skipped: pkg=\"" + pkg + "\" is not installed");
+                    } else if (changed.isEmpty()) {
+                        counts[1]++;
+                    } else {
+                        System.out.println(IpcPlan.label("Updated: pkg=\"" + pkg + "\" settings=" + String.join(",", changed)));
+                        counts[0]++;
+                    }
+                });
+        System.out.println(IpcPlan.label("Updated " + counts[0] + " of " + packages.size() + " package(s), " + counts[1] + " already up to date"));
+        return complete;
+    }
+}
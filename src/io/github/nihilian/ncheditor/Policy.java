@@ -0,0 +1,326 @@
+package io.github.nihilian.ncheditor;
+
+import android.app.INotificationManager;
+import android.app.NotificationChannel;
+
+import android.os.RemoteException;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * A policy file for {@code -policy}: one {@code <package_glob> <channel_pattern> key=value ...}
+ * rule per line, using the same keys as {@code -set}. A channel pattern is {@code *} for every
+ * channel or {@code |} separated terms that match anywhere in the channel id, ignoring case,
+ * e.g. {@code promo|marketing}. When several rules match a channel, their fields are merged in
+ * file order, so later rules win.
+ *
+ * <p>All rules are compiled up front: package globs into an exact name map plus a prefix map
+ * (only globs with a wildcard in the middle are tested one by one), and every channel term of
+ * every rule into a single Aho-Corasick automaton. Each channel id is then scanned once,
+ * whatever the number of rules, and packages no rule can match are not fetched at all.
+ */
+final class Policy {
+    private static final String ANY_CHANNEL = "*";
+
+    private final List<Properties> rules = new ArrayList<>();
+    private final Map<String, BitSet> exactPackages = new HashMap<>();
+    private final Map<String, BitSet> packagePrefixes = new HashMap<>();
+    private int[] prefixLengths = new int[0];
+    private final List<Pattern> otherPackageGlobs = new ArrayList<>();
+    private final List<Integer> otherPackageRules = new ArrayList<>();
+    private final BitSet anyChannelRules = new BitSet();
+    private final TermMatcher channelMatcher = new TermMatcher();
+    // channels matching the same rules share one patch, across packages and workers
+    private final Map<BitSet, ChannelPatch> patches = new ConcurrentHashMap<>();
+
+    private Policy() {}
+
+    /**
+     * @param path policy file, or "-" to read the policy from stdin
+     * @throws IllegalArgumentException for malformed rules, unknown keys or unparsable values
+     */
+    static Policy parse(String path) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(Main.openInput(path), StandardCharsets.UTF_8))) {
+            Policy policy = new Policy();
+            TreeSet<Integer> lengths = new TreeSet<>();
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                policy.addRule(path + ":" + lineNumber, CommandServer.tokenize(line), lengths);
+            }
+            policy.prefixLengths = new int[lengths.size()];
+            int i = 0;
+            for (int length : lengths) {
+                policy.prefixLengths[i++] = length;
+            }
+            policy.channelMatcher.build();
+            return policy;
+        }
+    }
+
+    private void addRule(String location, List<String> tokens, TreeSet<Integer> lengths) {
+        if (tokens.size() < 3) {
+            throw new IllegalArgumentException(location + ": expected <package_glob> <channel_pattern> key=value ...");
+        }
+        int rule = rules.size();
+        Properties update_fields = new Properties();
+        for (String field : tokens.subList(2, tokens.size())) {
+            int separator = field.indexOf('=');
+            if (separator <= 0) {
+                throw new IllegalArgumentException(location + ": expected key=value, found \"" + field + "\"");
+            }
+            String key = field.substring(0, separator);
+            String value = field.substring(separator + 1);
+            ChannelField channelField = ChannelField.forKey(key);
+            if (channelField == null) {
+                throw new IllegalArgumentException(location + ": unknown field \"" + key + "\", see -fields");
+            }
+            try {
+                channelField.parse(value);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException(location + ": " + e.getMessage(), e);
+            }
+            update_fields.setProperty(key, value);
+        }
+        rules.add(update_fields);
+
+        String pkg = tokens.get(0);
+        int wildcard = pkg.indexOf('*');
+        if (!PackageSelector.isGlob(pkg)) {
+            bits(exactPackages, pkg).set(rule);
+        } else if (wildcard == pkg.length() - 1 && pkg.indexOf('?') < 0) {
+            String prefix = pkg.substring(0, wildcard);
+            bits(packagePrefixes, prefix).set(rule);
+            lengths.add(prefix.length());
+        } else {
+            otherPackageGlobs.add(Pattern.compile(PackageSelector.globToRegex(pkg)));
+            otherPackageRules.add(rule);
+        }
+
+        String channels = tokens.get(1);
+        if (channels.equals(ANY_CHANNEL)) {
+            anyChannelRules.set(rule);
+        } else {
+            for (String term : channels.split("\\|")) {
+                if (!term.isEmpty()) {
+                    channelMatcher.add(term.toLowerCase(Locale.ROOT), rule);
+                }
+            }
+        }
+    }
+
+    private static BitSet bits(Map<String, BitSet> map, String key) {
+        BitSet bits = map.get(key);
+        if (bits == null) {
+            bits = new BitSet();
+            map.put(key, bits);
+        }
+        return bits;
+    }
+
+    /**
+     * @return the rules whose package glob matches, empty if the package can be skipped
+     */
+    BitSet rulesForPackage(String pkg) {
+        BitSet matched = new BitSet();
+        BitSet exact = exactPackages.get(pkg);
+        if (exact != null) {
+            matched.or(exact);
+        }
+        for (int length : prefixLengths) {
+            if (length > pkg.length()) {
+                break;
+            }
+            BitSet prefix = packagePrefixes.get(pkg.substring(0, length));
+            if (prefix != null) {
+                matched.or(prefix);
+            }
+        }
+        for (int i = 0; i < otherPackageGlobs.size(); i++) {
+            if (otherPackageGlobs.get(i).matcher(pkg).matches()) {
+                matched.set(otherPackageRules.get(i));
+            }
+        }
+        return matched;
+    }
+
+    /**
+     * @param packageRules the result of {@link #rulesForPackage} for the channel's package
+     * @return the rules that apply to the channel
+     */
+    BitSet rulesForChannel(BitSet packageRules, String channelId) {
+        BitSet matched = channelMatcher.match(channelId.toLowerCase(Locale.ROOT));
+        matched.or(anyChannelRules);
+        matched.and(packageRules);
+        return matched;
+    }
+
+    /**
+     * @return the fields of the given rules merged in file order
+     */
+    Properties merge(BitSet matched) {
+        Properties update_fields = new Properties();
+        for (int rule = matched.nextSetBit(0); rule >= 0; rule = matched.nextSetBit(rule + 1)) {
+            update_fields.putAll(rules.get(rule));
+        }
+        return update_fields;
+    }
+
+    int size() {
+        return rules.size();
+    }
+
+    /**
+     * Evaluates the policy against every channel of the given packages in one pass, fetching and
+     * updating one package per worker.
+     *
+     * @return false if any package could not be processed
+     */
+    boolean enforce(List<String> packages, int threads) {
+        final INotificationManager notificationManager = Main.getNotificationManagerService();
+        // updated channels, channels matched but already compliant
+        final int[] counts = new int[2];
+        boolean complete = PackageFanOut.run(packages, threads,
+                pkg -> {
+                    BitSet packageRules = rulesForPackage(pkg);
+                    if (packageRules.isEmpty()) {
+                        return new PackageResult();
+                    }
+                    int uid = Main.getPackageUid(pkg);
+                    if (uid < 0) {
+                        return new PackageResult();
+                    }
+                    return enforcePackage(notificationManager, pkg, uid, packageRules);
+                },
+                (pkg, result) -> {
+                    result.print();
+                    counts[0] += result.updated.size();
+                    counts[1] += result.unchanged;
+                });
+        System.out.println(IpcPlan.label("Updated " + counts[0] + " Notification Channel(s) in " + packages.size() + " package(s), " + counts[1] + " already compliant"));
+        return complete;
+    }
+
+    /**
+     * Fetches the package's channels once and updates every matched channel that does not
+     * comply yet.
+     *
+     * @param packageRules the result of {@link #rulesForPackage}, must not be empty
+     */
+    PackageResult enforcePackage(INotificationManager notificationManager, String pkg, int uid, BitSet packageRules) throws RemoteException {
+        final List<NotificationChannel> channels = notificationManager.getNotificationChannelsForPackage(pkg, uid, false).getList();
+        return ChannelTransaction.run(notificationManager, pkg, uid, transaction -> {
+            PackageResult result = new PackageResult();
+            for (NotificationChannel channel : channels) {
+                BitSet matched = rulesForChannel(packageRules, channel.getId());
+                if (matched.isEmpty()) {
+                    continue;
+                }
+                ChannelPatch patch = patches.get(matched);
+                if (patch == null) {
+                    patch = ChannelPatch.compile(merge(matched));
+                    patches.putIfAbsent(matched, patch);
+                }
+                transaction.capture(channel);
+                List<String> changed = patch.apply(channel);
+                if (changed.isEmpty()) {
+                    result.unchanged++;
+                    continue;
+                }
+                transaction.update(channel);
+                result.updated.add("Updated: pkg=\"" + pkg + "\" channelId=\"" + channel.getId() + "\" fields=" + String.join(",", changed));
+            }
+            return result;
+        });
+    }
+
+    /**
+     * Aho-Corasick automaton over the channel terms of all rules: one scan of an id reports
+     * every rule with a term occurring in it.
+     */
+    private static final class TermMatcher {
+        private static final class Node {
+            final Map<Character, Node> next = new HashMap<>();
+            Node fail;
+            final BitSet rules = new BitSet();
+        }
+
+        private final Node root = new Node();
+
+        void add(String term, int rule) {
+            Node node = root;
+            for (int i = 0; i < term.length(); i++) {
+                char c = term.charAt(i);
+                Node child = node.next.get(c);
+                if (child == null) {
+                    child = new Node();
+                    node.next.put(c, child);
+                }
+                node = child;
+            }
+            node.rules.set(rule);
+        }
+
+        /**
+         * Computes failure links breadth first and folds the rules of each node's failure chain
+         * into the node, so matching only has to look at the current node.
+         */
+        void build() {
+            ArrayDeque<Node> queue = new ArrayDeque<>();
+            root.fail = root;
+            for (Node child : root.next.values()) {
+                child.fail = root;
+                queue.add(child);
+            }
+            while (!queue.isEmpty()) {
+                Node node = queue.poll();
+                for (Map.Entry<Character, Node> entry : node.next.entrySet()) {
+                    char c = entry.getKey();
+                    Node child = entry.getValue();
+                    Node fail = node.fail;
+                    while (fail != root && !fail.next.containsKey(c)) {
+                        fail = fail.fail;
+                    }
+                    Node target = fail.next.get(c);
+                    child.fail = target != null && target != child ? target : root;
+                    child.rules.or(child.fail.rules);
+                    queue.add(child);
+                }
+            }
+        }
+
+        BitSet match(String text) {
+            BitSet matched = new BitSet();
+            Node node = root;
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                while (node != root && !node.next.containsKey(c)) {
+                    node = node.fail;
+                }
+                Node next = node.next.get(c);
+                node = next != null ? next : root;
+                matched.or(node.rules);
+            }
+            return matched;
+        }
+    }
+}
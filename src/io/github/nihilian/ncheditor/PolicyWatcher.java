@@ -0,0 +1,105 @@
+package io.github.nihilian.ncheditor;
+
+import android.app.INotificationManager;
+
+import android.content.pm.IPackageManager;
+import android.content.pm.PackageInfo;
+
+import android.os.RemoteException;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@code -policy <file> -watch <seconds>}: re-applies a policy until the process is killed.
+ * A package's channels are only fetched again when its {@code lastUpdateTime} moved (checked
+ * through {@link UidIndex#isCurrent}, which also picks up a new UID after a reinstall) or its
+ * channel count changed, so a pass over unchanged packages costs two scalar calls per package
+ * the policy targets and writes nothing.
+ */
+final class PolicyWatcher {
+    private final Policy policy;
+    private final String packageSpec;
+    private final int threads;
+    // package -> channel count seen when the policy was last enforced
+    private final Map<String, Integer> enforced = new ConcurrentHashMap<>();
+
+    /**
+     * @param packageSpec restrict the policy to these packages, see {@link PackageSelector}, or
+     *                    null for every installed package
+     */
+    PolicyWatcher(Policy policy, String packageSpec, int threads) {
+        this.policy = policy;
+        this.packageSpec = packageSpec;
+        this.threads = threads;
+    }
+
+    void run(long intervalMillis) throws RemoteException {
+        int pass = 0;
+        while (!Thread.currentThread().isInterrupted()) {
+            pass++;
+            pass(pass);
+            UidIndex.saveAll();
+            try {
+                Thread.sleep(intervalMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void pass(int pass) throws RemoteException {
+        final INotificationManager notificationManager = Main.getNotificationManagerService();
+        final IPackageManager packageManager = Main.getPackageManagerService();
+        final int userId = Main.getUserId();
+        final UidIndex uidIndex = UidIndex.forUser(userId);
+        List<String> installed = packageSpec != null ? Main.selectPackages(packageSpec) : Main.getAllPackages();
+        List<String> packages = new ArrayList<>();
+        final Map<String, BitSet> packageRules = new HashMap<>();
+        for (String pkg : installed) {
+            BitSet rules = policy.rulesForPackage(pkg);
+            if (!rules.isEmpty()) {
+                packages.add(pkg);
+                packageRules.put(pkg, rules);
+            }
+        }
+        enforced.keySet().retainAll(packages);
+
+        // packages enforced, channels updated
+        final int[] counts = new int[2];
+        PackageFanOut.run(packages, threads,
+                pkg -> {
+                    PackageInfo info = packageManager.getPackageInfo(pkg, 0, userId);
+                    if (info == null || info.applicationInfo == null) {
+                        enforced.remove(pkg);
+                        return null;
+                    }
+                    boolean updated = !uidIndex.isCurrent(pkg, info);
+                    int uid = info.applicationInfo.uid;
+                    int count = notificationManager.getNumNotificationChannelsForPackage(pkg, uid, false);
+                    Integer previous = enforced.get(pkg);
+                    if (!updated && previous != null && previous == count) {
+                        return null;
+                    }
+                    PackageResult result = policy.enforcePackage(notificationManager, pkg, uid, packageRules.get(pkg));
+                    enforced.put(pkg, count);
+                    return result;
+                },
+                (pkg, result) -> {
+                    if (result == null) {
+                        return;
+                    }
+                    result.print();
+                    counts[0]++;
+                    counts[1] += result.updated.size();
+                });
+        if (counts[0] > 0) {
+            System.out.println("Pass " + pass + ": re-checked " + counts[0] + " of " + packages.size() + " package(s), updated " + counts[1] + " Notification Channel(s)");
+        }
+        System.out.flush();
+    }
+}
@@ -0,0 +1,361 @@
+package io.github.nihilian.ncheditor;
+
+import android.app.INotificationManager;
+import android.app.NotificationChannel;
+import android.app.NotificationChannelGroup;
+import android.app.NotificationManager;
+
+import android.content.pm.ParceledListSlice;
+
+import android.os.RemoteException;
+
+import android.util.Xml;
+
+import com.android.modules.utils.TypedXmlPullParser;
+import com.android.modules.utils.TypedXmlSerializer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+/**
+ * Device snapshots for -export/-import. Groups and channels are serialized with their own
+ * {@code writeXml()} and read back with {@code populateFromXml()}, the same representation
+ * system_server uses for its policy file, wrapped in one element per package:
+ *
+ * <pre>
+ * &lt;ncheditor-snapshot version="1"&gt;
+ *   &lt;package name="com.example"&gt;
+ *     &lt;channelGroup id="..." ... /&gt;
+ *     &lt;channel id="..." name="..." importance="..." ... /&gt;
+ *   &lt;/package&gt;
+ * &lt;/ncheditor-snapshot&gt;
+ * </pre>
+ *
+ * Both directions work one package at a time, so memory use does not grow with the number of
+ * installed apps. Imports only write what differs from the live state of the device.
+ */
+final class Snapshot {
+    static final String TAG_SNAPSHOT = "ncheditor-snapshot";
+    static final String TAG_PACKAGE = "package";
+    // written by NotificationChannelGroup.writeXml() and NotificationChannel.writeXml()
+    static final String TAG_GROUP = "channelGroup";
+    static final String TAG_CHANNEL = "channel";
+    static final String ATT_VERSION = "version";
+    static final String ATT_NAME = "name";
+    static final String ATT_ID = "id";
+    static final String ATT_IMPORTANCE = "importance";
+    static final int VERSION = 1;
+
+    private static final String FEATURE_INDENT = "http://xmlpull.org/v1/doc/features.html#indent-output";
+
+    static final class PackageState {
+        final List<NotificationChannelGroup> groups;
+        final List<NotificationChannel> channels;
+
+        PackageState(List<NotificationChannelGroup> groups, List<NotificationChannel> channels) {
+            this.groups = groups;
+            this.channels = channels;
+        }
+
+        boolean isEmpty() {
+            return groups.isEmpty() && channels.isEmpty();
+        }
+    }
+
+    private Snapshot() {}
+
+    static PackageState fetch(INotificationManager notificationManager, String pkg, int uid, boolean includeDeleted) throws RemoteException {
+        ParceledListSlice<NotificationChannelGroup> channelGroups = notificationManager.getNotificationChannelGroupsForPackage(pkg, uid, includeDeleted);
+        List<NotificationChannelGroup> groups = new ArrayList<>();
+        for (NotificationChannelGroup group : channelGroups.getList()) {
+            // skip the placeholder holding channels without a group
+            if (group.getId() != null) {
+                groups.add(group);
+            }
+        }
+        List<NotificationChannel> channels = notificationManager.getNotificationChannelsForPackage(pkg, uid, includeDeleted).getList();
+        return new PackageState(groups, channels);
+    }
+
+    private static TypedXmlSerializer newSerializer(OutputStream os) throws IOException {
+        TypedXmlSerializer out = Xml.newFastSerializer();
+        out.setOutput(os, "utf-8");
+        out.startDocument(null, true);
+        return out;
+    }
+
+    /**
+     * @return the group as a standalone XML document, as written by its {@code writeXml()}
+     */
+    static byte[] serialize(NotificationChannelGroup group) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        TypedXmlSerializer out = newSerializer(bytes);
+        group.writeXml(out);
+        out.endDocument();
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @return the channel as a standalone XML document, as written by its {@code writeXml()}
+     */
+    static byte[] serialize(NotificationChannel channel) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+        TypedXmlSerializer out = newSerializer(bytes);
+        channel.writeXml(out);
+        out.endDocument();
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    static TypedXmlSerializer startDocument(OutputStream os) throws IOException {
+        TypedXmlSerializer out = Xml.newFastSerializer();
+        out.setOutput(os, "utf-8");
+        out.setFeature(FEATURE_INDENT, true);
+        out.startDocument(null, true);
+        out.startTag(null, TAG_SNAPSHOT);
+        out.attribute(null, ATT_VERSION, Integer.toString(VERSION));
+        return out;
+    }
+
+    static void endDocument(TypedXmlSerializer out) throws IOException {
+        out.endTag(null, TAG_SNAPSHOT);
+        out.endDocument();
+        out.flush();
+    }
+
+    static void writePackage(TypedXmlSerializer out, String pkg, PackageState state) throws IOException {
+        out.startTag(null, TAG_PACKAGE);
+        out.attribute(null, ATT_NAME, pkg);
+        for (NotificationChannelGroup group : state.groups) {
+            group.writeXml(out);
+        }
+        for (NotificationChannel channel : state.channels) {
+            channel.writeXml(out);
+        }
+        out.endTag(null, TAG_PACKAGE);
+    }
+
+    /**
+     * Writes the groups and channels of the given packages, fetching up to {@code threads}
+     * packages concurrently.
+     *
+     * @return false if any package could not be fetched and is missing from the snapshot
+     */
+    static boolean export(OutputStream os, List<String> packages, final boolean includeDeleted, int threads) throws IOException {
+        final INotificationManager notificationManager = Main.getNotificationManagerService();
+        final TypedXmlSerializer out = startDocument(os);
+        final int[] exported = new int[2];
+        boolean complete;
+        try {
+            complete = PackageFanOut.run(packages, threads,
+                    pkg -> {
+                        int uid = Main.getPackageUid(pkg);
+                        return uid >= 0 ? fetch(notificationManager, pkg, uid, includeDeleted) : null;
+                    },
+                    (pkg, state) -> {
+                        if (state == null || state.isEmpty()) {
+                            return;
+                        }
+                        try {
+                            writePackage(out, pkg, state);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                        exported[0]++;
+                        exported[1] += state.channels.size();
+                    });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        endDocument(out);
+        if (!complete) {
+            System.err.println("ERROR: snapshot is incomplete, not every package could be exported");
+            return false;
+        }
+        System.err.println("Exported " + exported[1] + " Notification Channel(s) of " + exported[0] + " package(s)");
+        return true;
+    }
+
+    interface PackageHandler {
+        void onPackage(String pkg, PackageState state) throws IOException;
+    }
+
+    /**
+     * Streams a snapshot, handing over each package as soon as its closing tag was read.
+     */
+    static void read(InputStream is, PackageHandler handler) throws IOException {
+        try {
+            TypedXmlPullParser parser = Xml.newFastPullParser();
+            parser.setInput(is, "utf-8");
+            String pkg = null;
+            List<NotificationChannelGroup> groups = null;
+            List<NotificationChannel> channels = null;
+            int type;
+            while ((type = parser.next()) != XmlPullParser.END_DOCUMENT) {
+                if (type == XmlPullParser.START_TAG) {
+                    String tag = parser.getName();
+                    if (TAG_SNAPSHOT.equals(tag)) {
+                        String version = parser.getAttributeValue(null, ATT_VERSION);
+                        if (!Integer.toString(VERSION).equals(version)) {
+                            throw new IOException("unsupported snapshot version: " + version);
+                        }
+                    } else if (TAG_PACKAGE.equals(tag)) {
+                        pkg = parser.getAttributeValue(null, ATT_NAME);
+                        groups = new ArrayList<>();
+                        channels = new ArrayList<>();
+                    } else if (pkg != null && TAG_GROUP.equals(tag)) {
+                        groups.add(readGroup(parser));
+                    } else if (pkg != null && TAG_CHANNEL.equals(tag)) {
+                        channels.add(readChannel(parser));
+                    }
+                } else if (type == XmlPullParser.END_TAG && TAG_PACKAGE.equals(parser.getName()) && pkg != null) {
+                    handler.onPackage(pkg, new PackageState(groups, channels));
+                    pkg = null;
+                    groups = null;
+                    channels = null;
+                }
+            }
+        } catch (XmlPullParserException e) {
+            throw new IOException("malformed snapshot: " + e.getMessage(), e);
+        }
+    }
+
+    static NotificationChannelGroup readGroup(TypedXmlPullParser parser) {
+        NotificationChannelGroup group = new NotificationChannelGroup(parser.getAttributeValue(null, ATT_ID), parser.getAttributeValue(null, ATT_NAME));
+        group.populateFromXml(parser);
+        return group;
+    }
+
+    static NotificationChannel readChannel(TypedXmlPullParser parser) {
+        String importance = parser.getAttributeValue(null, ATT_IMPORTANCE);
+        NotificationChannel channel = new NotificationChannel(parser.getAttributeValue(null, ATT_ID), parser.getAttributeValue(null, ATT_NAME),
+                importance != null ? Integer.parseInt(importance) : NotificationManager.IMPORTANCE_UNSPECIFIED);
+        channel.populateFromXml(parser);
+        return channel;
+    }
+
+    /**
+     * Restores every package of a snapshot that is installed on this device.
+     *
+     * @param packages restrict the import to these packages, or null for all of them
+     * @return false if any package could not be restored
+     */
+    static boolean importFrom(InputStream is, final Set<String> packages) throws IOException {
+        final INotificationManager notificationManager = Main.getNotificationManagerService();
+        final boolean[] success = { true };
+        read(is, (pkg, state) -> {
+            if (packages != null && !packages.contains(pkg)) {
+                return;
+            }
+            try {
+                restorePackage(notificationManager, pkg, state);
+            } catch (RemoteException e) {
+                System.err.println("ERROR: failed to restore package \"" + pkg + "\"");
+                e.printStackTrace();
+                success[0] = false;
+            }
+        });
+        return success[0];
+    }
+
+    /**
+     * Compares the snapshot with the live state of the package and only writes the groups and
+     * channels that differ. Channels are compared field by field for the report, and by their
+     * serialized XML for everything writeXml() persists beyond the modeled fields. A package
+     * that already matches costs no writes at all.
+     */
+    static void restorePackage(INotificationManager notificationManager, String pkg, PackageState state) throws RemoteException {
+        int uid = Main.getPackageUid(pkg);
+        if (uid < 0) {
+            System.err.println("Skipped: pkg=\"" + pkg + "\" is not installed");
+            return;
+        }
+        final PackageState live = fetch(notificationManager, pkg, uid, true);
+        int writes = ChannelTransaction.run(notificationManager, pkg, uid, transaction -> {
+            int count = 0;
+
+            Map<String, NotificationChannelGroup> liveGroups = new HashMap<>(live.groups.size() * 2);
+            for (NotificationChannelGroup group : live.groups) {
+                liveGroups.put(group.getId(), group);
+            }
+            for (NotificationChannelGroup group : state.groups) {
+                NotificationChannelGroup current = liveGroups.get(group.getId());
+                if (!groupMatches(current, group)) {
+                    if (current != null) {
+                        transaction.capture(current);
+                    }
+                    transaction.update(group);
+                    System.out.println(IpcPlan.label("Updated: pkg=\"" + pkg + "\" groupId=\"" + group.getId() + "\""));
+                    count++;
+                }
+            }
+
+            Map<String, NotificationChannel> liveChannels = new HashMap<>(live.channels.size() * 2);
+            for (NotificationChannel channel : live.channels) {
+                liveChannels.put(channel.getId(), channel);
+            }
+            List<NotificationChannel> missing = new ArrayList<>();
+            for (NotificationChannel channel : state.channels) {
+                NotificationChannel current = liveChannels.get(channel.getId());
+                if (current == null) {
+                    missing.add(channel);
+                    continue;
+                }
+                List<String> changed = ChannelField.diff(current, channel);
+                if (changed.isEmpty() && !sameXml(current, channel)) {
+                    // e.g. audio attributes or the vibration effect, which have no ChannelField
+                    changed = Collections.singletonList("other");
+                }
+                if (!changed.isEmpty()) {
+                    transaction.capture(current);
+                    transaction.update(channel);
+                    System.out.println(IpcPlan.label("Updated: pkg=\"" + pkg + "\" channelId=\"" + channel.getId() + "\" fields=" + String.join(",", changed)));
+                    count++;
+                }
+            }
+            if (!missing.isEmpty()) {
+                notificationManager.createNotificationChannelsForPackage(pkg, uid, new ParceledListSlice<>(missing));
+                System.out.println(IpcPlan.label("Created: pkg=\"" + pkg + "\" channels=" + missing.size()));
+                count++;
+            }
+            return count;
+        });
+        if (writes == 0) {
+            System.out.println("Unchanged: pkg=\"" + pkg + "\"");
+        }
+    }
+
+    private static boolean sameXml(NotificationChannel current, NotificationChannel wanted) {
+        try {
+            return Arrays.equals(serialize(current), serialize(wanted));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static boolean groupMatches(NotificationChannelGroup current, NotificationChannelGroup wanted) {
+        return current != null
+                && Objects.equals(toString(current.getName()), toString(wanted.getName()))
+                && Objects.equals(current.getDescription(), wanted.getDescription())
+                && current.isBlocked() == wanted.isBlocked();
+    }
+
+    private static String toString(CharSequence s) {
+        return s != null ? s.toString() : null;
+    }
+}
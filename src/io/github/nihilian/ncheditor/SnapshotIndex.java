@@ -0,0 +1,456 @@
+package io.github.nihilian.ncheditor;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Binary index over pulled snapshots for querying them on a workstation, without a device and
+ * without deserializing a single {@code NotificationChannel}. It only uses the JDK, so it can be
+ * built and run on its own:
+ *
+ * <pre>
+ * javac -d out src/io/github/nihilian/ncheditor/SnapshotIndex.java
+ * java -cp out io.github.nihilian.ncheditor.SnapshotIndex build &lt;index&gt; &lt;snapshot.xml | repo dir&gt;...
+ * java -cp out io.github.nihilian.ncheditor.SnapshotIndex query &lt;index&gt; [key=value ...]
+ * </pre>
+ *
+ * Inputs are -export snapshot files and -repo directories (every manifest is indexed). The index
+ * holds one fixed size record of ints per channel followed by a string table; queries map the
+ * file and compare ints only, resolving strings for the records that match.
+ */
+final class SnapshotIndex {
+    private static final int MAGIC = 0x4e434958; // "NCIX"
+    private static final int VERSION = 1;
+    private static final int HEADER_INTS = 4; // magic, version, record count, string count
+
+    // record layout, in ints
+    private static final int SNAPSHOT = 0;
+    private static final int PKG = 1;
+    private static final int ID = 2;
+    private static final int GROUP = 3;
+    private static final int IMPORTANCE = 4;
+    private static final int LOCKSCREEN_VISIBILITY = 5;
+    private static final int ALLOW_BUBBLES = 6;
+    private static final int USER_LOCKED_FIELDS = 7;
+    private static final int FLAGS = 8;
+    private static final int RECORD_INTS = 9;
+
+    // bits of FLAGS
+    private static final int FLAG_BYPASS_DND = 1;
+    private static final int FLAG_SHOW_BADGE = 1 << 1;
+    private static final int FLAG_LIGHTS = 1 << 2;
+    private static final int FLAG_VIBRATION_ENABLED = 1 << 3;
+    private static final int FLAG_DELETED = 1 << 4;
+    private static final int FLAG_BLOCKABLE_SYSTEM = 1 << 5;
+    private static final int FLAG_DEMOTED = 1 << 6;
+    private static final int FLAG_IMPORTANT_CONVO = 1 << 7;
+
+    private static final int NO_STRING = -1;
+
+    // NotificationChannel.writeXml() attributes and the defaults populateFromXml() assumes
+    private static final String ATT_ID = "id";
+    private static final String ATT_IMPORTANCE = "importance";
+    private static final String ATT_PRIORITY = "priority";
+    private static final String ATT_VISIBILITY = "visibility";
+    private static final String ATT_GROUP = "group";
+    private static final String ATT_ALLOW_BUBBLE = "allow_bubbles";
+    private static final String ATT_USER_LOCKED = "locked";
+    private static final String ATT_SHOW_BADGE = "show_badge";
+    private static final String ATT_LIGHTS = "lights";
+    private static final String ATT_VIBRATION_ENABLED = "vibration_enabled";
+    private static final String ATT_DELETED = "deleted";
+    private static final String ATT_BLOCKABLE_SYSTEM = "blockable_system";
+    private static final String ATT_DEMOTE = "dem";
+    private static final String ATT_IMP_CONVERSATION = "imp_conv";
+    private static final int IMPORTANCE_UNSPECIFIED = -1000;
+    private static final int VISIBILITY_NO_OVERRIDE = -1000;
+    private static final int PRIORITY_DEFAULT = 0;
+    private static final int DEFAULT_ALLOW_BUBBLE = -1;
+
+    // query keys, the same as the -fields keys where there is one
+    private static final String[] INT_KEYS = { "importance", "lockscreenVisibility", "allowBubbles", "userLockedFields" };
+    private static final int[] INT_SLOTS = { IMPORTANCE, LOCKSCREEN_VISIBILITY, ALLOW_BUBBLES, USER_LOCKED_FIELDS };
+    private static final String[] STRING_KEYS = { "snapshot", "pkg", "id", "group" };
+    private static final int[] STRING_SLOTS = { SNAPSHOT, PKG, ID, GROUP };
+    private static final String[] FLAG_KEYS = { "bypassDnd", "showBadge", "lights", "vibrationEnabled", "deleted", "blockableSystem", "demoted", "importantConvo" };
+    private static final int[] FLAG_BITS = { FLAG_BYPASS_DND, FLAG_SHOW_BADGE, FLAG_LIGHTS, FLAG_VIBRATION_ENABLED, FLAG_DELETED, FLAG_BLOCKABLE_SYSTEM, FLAG_DEMOTED, FLAG_IMPORTANT_CONVO };
+
+    private SnapshotIndex() {}
+
+    public static void main(String[] args) {
+        int status;
+        try {
+            status = run(args);
+        } catch (IOException e) {
+            e.printStackTrace();
+            status = 1;
+        } catch (IllegalArgumentException e) {
+            System.err.println("ERROR: " + e.getMessage());
+            status = 1;
+        }
+        System.out.flush();
+        if (status != 0) {
+            System.exit(status);
+        }
+    }
+
+    private static int run(String[] args) throws IOException {
+        if (args.length >= 3 && args[0].equals("build")) {
+            Builder builder = new Builder();
+            for (int i = 2; i < args.length; i++) {
+                File input = new File(args[i]);
+                if (input.isDirectory()) {
+                    builder.addRepository(input);
+                } else {
+                    builder.addSnapshot(input.getName(), input);
+                }
+            }
+            builder.write(new File(args[1]));
+            System.err.println("Indexed " + builder.count + " Notification Channel(s)");
+            return 0;
+        }
+        if (args.length >= 2 && args[0].equals("query")) {
+            query(new File(args[1]), Arrays.copyOfRange(args, 2, args.length), System.out);
+            return 0;
+        }
+        System.err.println("usage: SnapshotIndex build <index> <snapshot.xml | repo dir>...");
+        System.err.println("       SnapshotIndex query <index> [key=value ...]");
+        System.err.println("keys: " + String.join(", ", STRING_KEYS) + ", " + String.join(", ", INT_KEYS) + ", " + String.join(", ", FLAG_KEYS));
+        return 1;
+    }
+
+    private static final class Builder {
+        private final Map<String, Integer> stringIds = new HashMap<>();
+        private final List<String> strings = new ArrayList<>();
+        private int[] records = new int[RECORD_INTS * 1024];
+        private int count;
+        private final SAXParserFactory factory = SAXParserFactory.newInstance();
+
+        int intern(String s) {
+            if (s == null) {
+                return NO_STRING;
+            }
+            Integer id = stringIds.get(s);
+            if (id == null) {
+                id = strings.size();
+                strings.add(s);
+                stringIds.put(s, id);
+            }
+            return id;
+        }
+
+        /**
+         * Converts the attributes of a {@code <channel>} element to a record, applying the same
+         * defaults as {@code NotificationChannel.populateFromXml()}.
+         */
+        int[] record(Attributes attributes) {
+            int[] record = new int[RECORD_INTS];
+            record[ID] = intern(attributes.getValue(ATT_ID));
+            record[GROUP] = intern(attributes.getValue(ATT_GROUP));
+            record[IMPORTANCE] = parseInt(attributes.getValue(ATT_IMPORTANCE), IMPORTANCE_UNSPECIFIED);
+            record[LOCKSCREEN_VISIBILITY] = parseInt(attributes.getValue(ATT_VISIBILITY), VISIBILITY_NO_OVERRIDE);
+            record[ALLOW_BUBBLES] = parseInt(attributes.getValue(ATT_ALLOW_BUBBLE), DEFAULT_ALLOW_BUBBLE);
+            record[USER_LOCKED_FIELDS] = parseInt(attributes.getValue(ATT_USER_LOCKED), 0);
+            int flags = 0;
+            if (parseInt(attributes.getValue(ATT_PRIORITY), PRIORITY_DEFAULT) != PRIORITY_DEFAULT) {
+                flags |= FLAG_BYPASS_DND;
+            }
+            flags |= flag(attributes.getValue(ATT_SHOW_BADGE), FLAG_SHOW_BADGE);
+            flags |= flag(attributes.getValue(ATT_LIGHTS), FLAG_LIGHTS);
+            flags |= flag(attributes.getValue(ATT_VIBRATION_ENABLED), FLAG_VIBRATION_ENABLED);
+            flags |= flag(attributes.getValue(ATT_DELETED), FLAG_DELETED);
+            flags |= flag(attributes.getValue(ATT_BLOCKABLE_SYSTEM), FLAG_BLOCKABLE_SYSTEM);
+            flags |= flag(attributes.getValue(ATT_DEMOTE), FLAG_DEMOTED);
+            flags |= flag(attributes.getValue(ATT_IMP_CONVERSATION), FLAG_IMPORTANT_CONVO);
+            record[FLAGS] = flags;
+            return record;
+        }
+
+        void add(int snapshot, int pkg, int[] record) {
+            if (records.length < (count + 1) * RECORD_INTS) {
+                records = Arrays.copyOf(records, records.length * 2);
+            }
+            int base = count * RECORD_INTS;
+            System.arraycopy(record, 0, records, base, RECORD_INTS);
+            records[base + SNAPSHOT] = snapshot;
+            records[base + PKG] = pkg;
+            count++;
+        }
+
+        void addSnapshot(String name, File file) throws IOException {
+            final int snapshot = intern(name);
+            parse(file, new DefaultHandler() {
+                private int pkg = NO_STRING;
+
+                @Override
+                public void startElement(String uri, String localName, String qName, Attributes attributes) {
+                    if (qName.equals("package")) {
+                        pkg = intern(attributes.getValue("name"));
+                    } else if (qName.equals("channel") && pkg != NO_STRING) {
+                        add(snapshot, pkg, record(attributes));
+                    }
+                }
+
+                @Override
+                public void endElement(String uri, String localName, String qName) {
+                    if (qName.equals("package")) {
+                        pkg = NO_STRING;
+                    }
+                }
+            });
+        }
+
+        /**
+         * Indexes every manifest of a -repo directory, parsing each distinct channel object once.
+         */
+        void addRepository(File root) throws IOException {
+            File[] manifests = new File(root, "manifests").listFiles();
+            if (manifests == null) {
+                throw new IOException("not a snapshot repository: " + root);
+            }
+            Arrays.sort(manifests);
+            Map<String, int[]> objects = new HashMap<>();
+            for (File manifest : manifests) {
+                if (manifest.getName().startsWith(".")) {
+                    continue;
+                }
+                int snapshot = intern(manifest.getName());
+                try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(manifest), StandardCharsets.UTF_8))) {
+                    int pkg = NO_STRING;
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        if (line.startsWith("package ")) {
+                            pkg = intern(line.substring("package ".length()));
+                        } else if (line.startsWith("c ") && pkg != NO_STRING) {
+                            String hash = line.substring(2);
+                            int[] record = objects.get(hash);
+                            if (record == null) {
+                                record = parseObject(new File(new File(new File(root, "objects"), hash.substring(0, 2)), hash.substring(2)));
+                                objects.put(hash, record);
+                            }
+                            add(snapshot, pkg, record);
+                        }
+                    }
+                }
+            }
+        }
+
+        private int[] parseObject(File file) throws IOException {
+            final int[][] record = new int[1][];
+            parse(file, new DefaultHandler() {
+                @Override
+                public void startElement(String uri, String localName, String qName, Attributes attributes) {
+                    if (qName.equals("channel") && record[0] == null) {
+                        record[0] = record(attributes);
+                    }
+                }
+            });
+            if (record[0] == null) {
+                throw new IOException("not a channel object: " + file);
+            }
+            return record[0];
+        }
+
+        private void parse(File file, DefaultHandler handler) throws IOException {
+            try (InputStream is = new FileInputStream(file)) {
+                SAXParser parser = factory.newSAXParser();
+                parser.parse(is, handler);
+            } catch (ParserConfigurationException | SAXException e) {
+                throw new IOException("malformed snapshot " + file + ": " + e.getMessage(), e);
+            }
+        }
+
+        void write(File file) throws IOException {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 64 * 1024))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(count);
+                out.writeInt(strings.size());
+                for (int i = 0; i < count * RECORD_INTS; i++) {
+                    out.writeInt(records[i]);
+                }
+                // string table: offsets relative to the first string, then length prefixed UTF-8
+                List<byte[]> encoded = new ArrayList<>(strings.size());
+                int offset = 0;
+                for (String s : strings) {
+                    byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+                    encoded.add(bytes);
+                    out.writeInt(offset);
+                    offset += 4 + bytes.length;
+                }
+                for (byte[] bytes : encoded) {
+                    out.writeInt(bytes.length);
+                    out.write(bytes);
+                }
+            }
+        }
+    }
+
+    private static int parseInt(String value, int defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    private static int flag(String value, int bit) {
+        return Boolean.parseBoolean(value) ? bit : 0;
+    }
+
+    /**
+     * Prints every indexed channel matching all {@code key=value} terms as tab separated values.
+     */
+    static void query(File file, String[] terms, PrintStream out) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            IntBuffer ints = buffer.asIntBuffer();
+            if (ints.get(0) != MAGIC || ints.get(1) != VERSION) {
+                throw new IOException("not a snapshot index: " + file);
+            }
+            int count = ints.get(2);
+            int stringCount = ints.get(3);
+            int offsetsStart = HEADER_INTS + count * RECORD_INTS;
+            int stringsStart = (offsetsStart + stringCount) * 4;
+            StringTable strings = new StringTable(buffer, ints, offsetsStart, stringsStart, stringCount);
+
+            // compile the terms to (slot, mask, value): record[slot] & mask == value
+            int[] slots = new int[terms.length];
+            int[] masks = new int[terms.length];
+            int[] values = new int[terms.length];
+            int scan = count;
+            for (int t = 0; t < terms.length; t++) {
+                int eq = terms[t].indexOf('=');
+                if (eq <= 0) {
+                    throw new IllegalArgumentException("expected key=value, got \"" + terms[t] + "\"");
+                }
+                String key = terms[t].substring(0, eq);
+                String value = terms[t].substring(eq + 1);
+                masks[t] = -1;
+                int i;
+                if ((i = Arrays.asList(INT_KEYS).indexOf(key)) >= 0) {
+                    slots[t] = INT_SLOTS[i];
+                    try {
+                        values[t] = Integer.parseInt(value);
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException("\"" + key + "\" expects a number, got \"" + value + "\"");
+                    }
+                } else if ((i = Arrays.asList(STRING_KEYS).indexOf(key)) >= 0) {
+                    slots[t] = STRING_SLOTS[i];
+                    values[t] = strings.find(value);
+                    if (values[t] == NO_STRING) {
+                        scan = 0; // the value occurs nowhere in the index
+                    }
+                } else if ((i = Arrays.asList(FLAG_KEYS).indexOf(key)) >= 0) {
+                    slots[t] = FLAGS;
+                    masks[t] = FLAG_BITS[i];
+                    values[t] = Boolean.parseBoolean(value) ? FLAG_BITS[i] : 0;
+                } else {
+                    throw new IllegalArgumentException("unknown key \"" + key + "\"");
+                }
+            }
+
+            StringBuilder row = new StringBuilder();
+            out.println("snapshot\tpkg\tid\tgroup\timportance\tlockscreenVisibility\tallowBubbles\tuserLockedFields\t" + String.join("\t", FLAG_KEYS));
+            records:
+            for (int r = 0; r < scan; r++) {
+                int base = HEADER_INTS + r * RECORD_INTS;
+                for (int t = 0; t < slots.length; t++) {
+                    if ((ints.get(base + slots[t]) & masks[t]) != values[t]) {
+                        continue records;
+                    }
+                }
+                row.setLength(0);
+                for (int slot : STRING_SLOTS) {
+                    int id = ints.get(base + slot);
+                    row.append(id != NO_STRING ? strings.get(id) : "").append('\t');
+                }
+                for (int slot : INT_SLOTS) {
+                    row.append(ints.get(base + slot)).append('\t');
+                }
+                int flags = ints.get(base + FLAGS);
+                for (int i = 0; i < FLAG_BITS.length; i++) {
+                    row.append((flags & FLAG_BITS[i]) != 0).append(i + 1 < FLAG_BITS.length ? '\t' : '\n');
+                }
+                out.print(row);
+            }
+        }
+    }
+
+    private static final class StringTable {
+        private final ByteBuffer buffer;
+        private final IntBuffer ints;
+        private final int offsetsStart;
+        private final int stringsStart;
+        private final int count;
+
+        StringTable(ByteBuffer buffer, IntBuffer ints, int offsetsStart, int stringsStart, int count) {
+            this.buffer = buffer;
+            this.ints = ints;
+            this.offsetsStart = offsetsStart;
+            this.stringsStart = stringsStart;
+            this.count = count;
+        }
+
+        String get(int id) {
+            int position = stringsStart + ints.get(offsetsStart + id);
+            int length = buffer.getInt(position);
+            byte[] bytes = new byte[length];
+            ByteBuffer view = buffer.duplicate();
+            view.position(position + 4);
+            view.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * @return the id of the string, or {@link #NO_STRING} if the index does not contain it
+         */
+        int find(String s) {
+            byte[] wanted = s.getBytes(StandardCharsets.UTF_8);
+            for (int id = 0; id < count; id++) {
+                int position = stringsStart + ints.get(offsetsStart + id);
+                if (buffer.getInt(position) != wanted.length) {
+                    continue;
+                }
+                int i = 0;
+                while (i < wanted.length && buffer.get(position + 4 + i) == wanted[i]) {
+                    i++;
+                }
+                if (i == wanted.length) {
+                    return id;
+                }
+            }
+            return NO_STRING;
+        }
+    }
+}
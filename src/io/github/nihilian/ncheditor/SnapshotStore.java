@@ -0,0 +1,303 @@
+package io.github.nihilian.ncheditor;
+
+import android.app.INotificationManager;
+import android.app.NotificationChannel;
+import android.app.NotificationChannelGroup;
+
+import android.os.RemoteException;
+
+import android.util.Xml;
+
+import com.android.modules.utils.TypedXmlPullParser;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+/**
+ * Content-addressed snapshot repository for -export/-import with -repo. Every group and channel
+ * is serialized on its own with {@code writeXml()} and stored once under the SHA-256 of its
+ * bytes; a device snapshot is only a manifest of those hashes:
+ *
+ * <pre>
+ * &lt;repo&gt;/objects/ab/cdef...   one serialized channel or group
+ * &lt;repo&gt;/manifests/&lt;name&gt;     "package &lt;name&gt;" lines, each followed by
+ *                           "g &lt;hash&gt;" (group) and "c &lt;hash&gt;" (channel) lines
+ * </pre>
+ *
+ * Identical configurations on many devices therefore share their objects, and repositories
+ * pulled from different devices can be merged by copying their directories into one.
+ */
+final class SnapshotStore {
+    private static final String MANIFEST_HEADER = "# ncheditor manifest v1";
+    private static final String LINE_PACKAGE = "package ";
+    private static final char KIND_GROUP = 'g';
+    private static final char KIND_CHANNEL = 'c';
+
+    private static final class Blob {
+        final char kind;
+        final String hash;
+        final byte[] data;
+
+        Blob(char kind, byte[] data) {
+            this.kind = kind;
+            this.hash = hash(data);
+            this.data = data;
+        }
+    }
+
+    private final File objects;
+    private final File manifests;
+    // objects known to exist, so each one is only checked on disk once per run
+    private final Set<String> known = ConcurrentHashMap.newKeySet();
+
+    SnapshotStore(File root) {
+        this.objects = new File(root, "objects");
+        this.manifests = new File(root, "manifests");
+    }
+
+    private static String hash(byte[] data) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        byte[] sum = digest.digest(data);
+        StringBuilder hex = new StringBuilder(sum.length * 2);
+        for (byte b : sum) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+    private File objectFile(String hash) {
+        return new File(new File(objects, hash.substring(0, 2)), hash.substring(2));
+    }
+
+    private File manifestFile(String name) {
+        if (name.isEmpty() || name.contains("/") || name.startsWith(".")) {
+            throw new IllegalArgumentException("invalid snapshot name: \"" + name + "\"");
+        }
+        return new File(manifests, name);
+    }
+
+    /**
+     * @return true if the object was not in the repository yet
+     */
+    private boolean store(Blob blob) throws IOException {
+        if (known.contains(blob.hash)) {
+            return false;
+        }
+        File file = objectFile(blob.hash);
+        boolean added = false;
+        if (!file.exists()) {
+            File dir = file.getParentFile();
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("could not create " + dir);
+            }
+            File tmp = new File(dir, "." + blob.hash.substring(2) + ".tmp");
+            try (OutputStream os = new FileOutputStream(tmp)) {
+                os.write(blob.data);
+            }
+            if (!tmp.renameTo(file)) {
+                throw new IOException("could not create " + file);
+            }
+            added = true;
+        }
+        known.add(blob.hash);
+        return added;
+    }
+
+    private byte[] load(String hash) throws IOException {
+        File file = objectFile(hash);
+        byte[] data = new byte[(int) file.length()];
+        try (InputStream is = new FileInputStream(file)) {
+            int offset = 0;
+            int read;
+            while (offset < data.length && (read = is.read(data, offset, data.length - offset)) > 0) {
+                offset += read;
+            }
+        }
+        return data;
+    }
+
+    private static TypedXmlPullParser openObject(byte[] data) throws IOException, XmlPullParserException {
+        TypedXmlPullParser parser = Xml.newFastPullParser();
+        parser.setInput(new ByteArrayInputStream(data), "utf-8");
+        int type;
+        while ((type = parser.next()) != XmlPullParser.START_TAG) {
+            if (type == XmlPullParser.END_DOCUMENT) {
+                throw new IOException("empty object");
+            }
+        }
+        return parser;
+    }
+
+    /**
+     * Stores the groups and channels of the given packages and writes the manifest
+     * {@code name}. Packages are fetched and serialized on up to {@code threads} workers.
+     * If any package cannot be fetched, the previous manifest {@code name} is kept.
+     *
+     * @return false if any package could not be exported
+     */
+    boolean export(String name, List<String> packages, final boolean includeDeleted, int threads) throws IOException {
+        final INotificationManager notificationManager = Main.getNotificationManagerService();
+        File manifest = manifestFile(name);
+        if (!manifests.isDirectory() && !manifests.mkdirs()) {
+            throw new IOException("could not create " + manifests);
+        }
+        File tmp = new File(manifests, "." + name + ".tmp");
+        final int[] counts = new int[3];
+        boolean complete;
+        try (final BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmp), StandardCharsets.UTF_8))) {
+            writer.write(MANIFEST_HEADER);
+            writer.newLine();
+            complete = PackageFanOut.run(packages, threads,
+                    pkg -> {
+                        int uid = Main.getPackageUid(pkg);
+                        if (uid < 0) {
+                            return null;
+                        }
+                        Snapshot.PackageState state = Snapshot.fetch(notificationManager, pkg, uid, includeDeleted);
+                        List<Blob> blobs = new ArrayList<>(state.groups.size() + state.channels.size());
+                        try {
+                            for (NotificationChannelGroup group : state.groups) {
+                                blobs.add(new Blob(KIND_GROUP, Snapshot.serialize(group)));
+                            }
+                            for (NotificationChannel channel : state.channels) {
+                                blobs.add(new Blob(KIND_CHANNEL, Snapshot.serialize(channel)));
+                            }
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                        return blobs;
+                    },
+                    (pkg, blobs) -> {
+                        if (blobs == null || blobs.isEmpty()) {
+                            return;
+                        }
+                        try {
+                            writer.write(LINE_PACKAGE + pkg);
+                            writer.newLine();
+                            for (Blob blob : blobs) {
+                                if (store(blob)) {
+                                    counts[2]++;
+                                }
+                                writer.write(blob.kind + " " + blob.hash);
+                                writer.newLine();
+                            }
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                        counts[0]++;
+                        counts[1] += blobs.size();
+                    });
+        } catch (UncheckedIOException e) {
+            tmp.delete();
+            throw e.getCause();
+        } catch (IOException e) {
+            tmp.delete();
+            throw e;
+        }
+        if (!complete) {
+            tmp.delete();
+            System.err.println("ERROR: not every package could be exported, kept the previous manifest \"" + name + "\"");
+            return false;
+        }
+        if (!tmp.renameTo(manifest)) {
+            throw new IOException("could not create " + manifest);
+        }
+        System.err.println("Exported " + counts[1] + " object(s) of " + counts[0] + " package(s) to \"" + name + "\", " + counts[2] + " new");
+        return true;
+    }
+
+    /**
+     * Restores the manifest {@code name} package by package, see
+     * {@link Snapshot#restorePackage}. Each distinct object is read from disk only once.
+     *
+     * @param packages restrict the import to these packages, or null for all of them
+     * @return false if any package could not be restored
+     */
+    boolean importFrom(String name, Set<String> packages) throws IOException {
+        INotificationManager notificationManager = Main.getNotificationManagerService();
+        Map<String, byte[]> cache = new HashMap<>();
+        boolean success = true;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(manifestFile(name)), StandardCharsets.UTF_8))) {
+            if (!MANIFEST_HEADER.equals(reader.readLine())) {
+                throw new IOException("not a snapshot manifest: \"" + name + "\"");
+            }
+            String pkg = null;
+            List<String> hashes = new ArrayList<>();
+            String line;
+            do {
+                line = reader.readLine();
+                if (line == null || line.startsWith(LINE_PACKAGE)) {
+                    if (pkg != null && (packages == null || packages.contains(pkg))) {
+                        success &= restore(notificationManager, pkg, hashes, cache);
+                    }
+                    pkg = line != null ? line.substring(LINE_PACKAGE.length()) : null;
+                    hashes.clear();
+                } else if (!line.isEmpty() && !line.startsWith("#")) {
+                    hashes.add(line);
+                }
+            } while (line != null);
+        }
+        return success;
+    }
+
+    private boolean restore(INotificationManager notificationManager, String pkg, List<String> entries, Map<String, byte[]> cache) throws IOException {
+        List<NotificationChannelGroup> groups = new ArrayList<>();
+        List<NotificationChannel> channels = new ArrayList<>();
+        try {
+            for (String entry : entries) {
+                if (entry.length() < 3 || entry.charAt(1) != ' ') {
+                    throw new IOException("malformed manifest line: \"" + entry + "\"");
+                }
+                String hash = entry.substring(2);
+                byte[] data = cache.get(hash);
+                if (data == null) {
+                    data = load(hash);
+                    cache.put(hash, data);
+                }
+                TypedXmlPullParser parser = openObject(data);
+                if (entry.charAt(0) == KIND_GROUP) {
+                    groups.add(Snapshot.readGroup(parser));
+                } else {
+                    channels.add(Snapshot.readChannel(parser));
+                }
+            }
+        } catch (XmlPullParserException e) {
+            throw new IOException("malformed object in package \"" + pkg + "\": " + e.getMessage(), e);
+        }
+        try {
+            Snapshot.restorePackage(notificationManager, pkg, new Snapshot.PackageState(groups, channels));
+            return true;
+        } catch (RemoteException e) {
+            System.err.println("ERROR: failed to restore package \"" + pkg + "\"");
+            e.printStackTrace();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package io.github.nihilian.ncheditor;
+
+import android.app.NotificationChannel;
+import android.app.NotificationChannelGroup;
+
+/**
+ * The human readable -get output, based on {@code toString()}.
+ */
+final class TextListingWriter implements ListingWriter {
+    private final boolean packageHeaders;
+
+    /**
+     * @param packageHeaders print a "## package" line before each package's entries, for
+     *                       listings that span several packages
+     */
+    TextListingWriter(boolean packageHeaders) {
+        this.packageHeaders = packageHeaders;
+    }
+
+    @Override
+    public void channel(String pkg, int index, int count, NotificationChannel channel) {
+        entry(pkg, index, count, channel);
+    }
+
+    @Override
+    public void group(String pkg, int index, int count, NotificationChannelGroup group) {
+        entry(pkg, index, count, group);
+    }
+
+    private void entry(String pkg, int index, int count, Object entry) {
+        if (index >= 0) {
+            if (packageHeaders && index == 0) {
+                System.out.println("## " + pkg);
+            }
+            int list_entry = index + 1;
+            System.out.println("# " + list_entry + "/" + count);
+        }
+        // System.out.println(entry.toJson());
+        System.out.println(entry.toString());
+    }
+
+    @Override
+    public void flush() {
+        System.out.flush();
+    }
+}
@@ -0,0 +1,63 @@
+package io.github.nihilian.ncheditor;
+
+import android.app.NotificationChannel;
+import android.app.NotificationChannelGroup;
+
+import java.util.List;
+
+/**
+ * The -tree output: each Notification Channel Group followed by its channels, indented below
+ * it. Channels without a group are listed under the group system_server reports with a null id.
+ */
+final class TreeListingWriter implements ListingWriter {
+    private static final String INDENT = "    ";
+
+    private final OutputBuffer out = new OutputBuffer(System.out);
+    private final boolean packageHeaders;
+
+    /**
+     * @param packageHeaders print a "## package" line before each package's groups, for
+     *                       listings that span several packages
+     */
+    TreeListingWriter(boolean packageHeaders) {
+        this.packageHeaders = packageHeaders;
+    }
+
+    @Override
+    public void channel(String pkg, int index, int count, NotificationChannel channel) {
+        header(pkg, index);
+        out.append(INDENT).append(channel.toString()).append('\n');
+    }
+
+    @Override
+    public void group(String pkg, int index, int count, NotificationChannelGroup group) {
+        header(pkg, index);
+        if (group.getId() == null) {
+            out.append("+ (no group)");
+        } else {
+            out.append("+ ").append(group.getId());
+            if (group.getName() != null) {
+                out.append(" \"").append(group.getName()).append('"');
+            }
+            if (group.isBlocked()) {
+                out.append(" blocked");
+            }
+        }
+        out.append('\n');
+        List<NotificationChannel> channels = group.getChannels();
+        for (NotificationChannel channel : channels) {
+            out.append(INDENT).append(channel.toString()).append('\n');
+        }
+    }
+
+    private void header(String pkg, int index) {
+        if (packageHeaders && index == 0) {
+            out.append("## ").append(pkg).append('\n');
+        }
+    }
+
+    @Override
+    public void flush() {
+        out.flush();
+    }
+}
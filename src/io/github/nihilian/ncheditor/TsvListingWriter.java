@@ -0,0 +1,171 @@
+package io.github.nihilian.ncheditor;
+
+import android.app.NotificationChannel;
+import android.app.NotificationChannelGroup;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Column projection for -get: a header line followed by one tab separated line per entry,
+ * containing only the requested columns. Column names are resolved once up front, so each
+ * entry only costs the getters that were asked for.
+ *
+ * <p>Tabs, line feeds, carriage returns and backslashes inside values are written as
+ * {@code \t}, {@code \n}, {@code \r} and {@code \\}; null values are left empty.
+ */
+final class TsvListingWriter implements ListingWriter {
+    private static final String[] CHANNEL_EXTRA_COLUMNS = { "pkg", "id", "userLockedFields" };
+    private static final String[] GROUP_COLUMNS = { "pkg", "id", "name", "description", "blocked", "userLockedFields", "channels" };
+
+    private final OutputBuffer out;
+    private final String[] columns;
+    // resolved channel columns, null for the extra columns handled by name
+    private final ChannelField[] fields;
+    private boolean headerWritten;
+
+    private TsvListingWriter(PrintStream out, String[] columns, ChannelField[] fields) {
+        this.out = new OutputBuffer(out);
+        this.columns = columns;
+        this.fields = fields;
+    }
+
+    /**
+     * @param columnList comma separated column names
+     * @param groups     whether the listing is of Notification Channel Groups
+     * @throws IllegalArgumentException if a column name is unknown
+     */
+    static TsvListingWriter create(PrintStream out, String columnList, boolean groups) {
+        String[] columns = columnList.split(",");
+        ChannelField[] fields = new ChannelField[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = columns[i].trim();
+            if (groups) {
+                if (!contains(GROUP_COLUMNS, columns[i])) {
+                    throw new IllegalArgumentException("unknown column \"" + columns[i] + "\", available: " + String.join(",", GROUP_COLUMNS));
+                }
+            } else if (!contains(CHANNEL_EXTRA_COLUMNS, columns[i])) {
+                fields[i] = ChannelField.forKey(columns[i]);
+                if (fields[i] == null) {
+                    throw new IllegalArgumentException("unknown column \"" + columns[i] + "\", available: " + String.join(",", channelColumns()));
+                }
+            }
+        }
+        return new TsvListingWriter(out, columns, fields);
+    }
+
+    private static List<String> channelColumns() {
+        List<String> names = new ArrayList<>();
+        for (String column : CHANNEL_EXTRA_COLUMNS) {
+            names.add(column);
+        }
+        for (ChannelField field : ChannelField.values()) {
+            names.add(field.key());
+        }
+        return names;
+    }
+
+    private static boolean contains(String[] values, String value) {
+        for (String v : values) {
+            if (v.equals(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void writeHeader() {
+        if (headerWritten) {
+            return;
+        }
+        headerWritten = true;
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                out.append('\t');
+            }
+            out.append(columns[i]);
+        }
+        out.append('\n');
+    }
+
+    @Override
+    public void channel(String pkg, int index, int count, NotificationChannel channel) {
+        writeHeader();
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                out.append('\t');
+            }
+            if (fields[i] != null) {
+                writeValue(fields[i].read(channel));
+            } else if (columns[i].equals("pkg")) {
+                writeValue(pkg);
+            } else if (columns[i].equals("id")) {
+                writeValue(channel.getId());
+            } else {
+                out.append(channel.getUserLockedFields());
+            }
+        }
+        out.append('\n');
+    }
+
+    @Override
+    public void group(String pkg, int index, int count, NotificationChannelGroup group) {
+        writeHeader();
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                out.append('\t');
+            }
+            switch (columns[i]) {
+                case "pkg":
+                    writeValue(pkg);
+                    break;
+                case "id":
+                    writeValue(group.getId());
+                    break;
+                case "name":
+                    writeValue(group.getName());
+                    break;
+                case "description":
+                    writeValue(group.getDescription());
+                    break;
+                case "blocked":
+                    out.append(group.isBlocked());
+                    break;
+                case "userLockedFields":
+                    out.append(group.getUserLockedFields());
+                    break;
+                case "channels":
+                    out.append(group.getChannels().size());
+                    break;
+            }
+        }
+        out.append('\n');
+    }
+
+    private void writeValue(Object value) {
+        if (value == null) {
+            return;
+        }
+        if (value instanceof Boolean) {
+            out.append((boolean) (Boolean) value);
+        } else if (value instanceof Integer || value instanceof Long) {
+            out.append(((Number) value).longValue());
+        } else if (value instanceof long[]) {
+            long[] values = (long[]) value;
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    out.append(',');
+                }
+                out.append(values[i]);
+            }
+        } else {
+            out.appendTsv(value instanceof CharSequence ? (CharSequence) value : value.toString());
+        }
+    }
+
+    @Override
+    public void flush() {
+        out.flush();
+    }
+}
@@ -0,0 +1,286 @@
+package io.github.nihilian.ncheditor;
+
+import android.content.pm.IPackageManager;
+import android.content.pm.PackageInfo;
+
+import android.os.RemoteException;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * On-disk package to UID index, one file per user, so that repeated runs do not have to ask
+ * the package manager for every package they touch.
+ *
+ * <p>The first lookup of a process, or of every command under {@code -server} (see
+ * {@link #invalidateAll}), revalidates the whole table with a single
+ * {@code getNamesForUids} call, plus one {@code getPackagesForUid} call per shared UID, and
+ * drops every entry whose UID no longer belongs to the indexed package (uninstalled or
+ * reinstalled). A UID survives app updates, so the recorded {@code lastUpdateTime} and version
+ * code are only used by callers that already hold a fresh {@link PackageInfo}, see
+ * {@link #isCurrent}.
+ */
+final class UidIndex {
+    private static final String HEADER = "# ncheditor uid index v1";
+    private static final String DEFAULT_DIRECTORY = "/data/local/tmp";
+
+    private static File directory = defaultDirectory();
+    private static final Map<Integer, UidIndex> indexes = new HashMap<>();
+
+    private static final class Entry {
+        final int uid;
+        final long lastUpdateTime;
+        final long versionCode;
+
+        Entry(int uid, long lastUpdateTime, long versionCode) {
+            this.uid = uid;
+            this.lastUpdateTime = lastUpdateTime;
+            this.versionCode = versionCode;
+        }
+    }
+
+    private final int userId;
+    private final File file;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    // not persisted, a package can be installed for the user at any time
+    private final Set<String> notInstalled = ConcurrentHashMap.newKeySet();
+    private boolean validated;
+    private volatile boolean dirty;
+
+    private UidIndex(int userId, File file) {
+        this.userId = userId;
+        this.file = file;
+    }
+
+    private static File defaultDirectory() {
+        String home = System.getenv("NCHEDITOR_HOME");
+        return new File(home != null ? home : DEFAULT_DIRECTORY);
+    }
+
+    static synchronized UidIndex forUser(int userId) {
+        UidIndex index = indexes.get(userId);
+        if (index == null) {
+            File file = directory != null ? new File(directory, "ncheditor-uids-" + userId + ".tsv") : null;
+            index = new UidIndex(userId, file);
+            index.load();
+            indexes.put(userId, index);
+        }
+        return index;
+    }
+
+    /**
+     * Forgets all loaded indexes and stores new ones in the given directory, or only in memory
+     * if it is null.
+     */
+    static synchronized void reset(File newDirectory) {
+        directory = newDirectory;
+        indexes.clear();
+    }
+
+    /**
+     * Forgets every resolved UID, in memory and on disk.
+     */
+    static synchronized void clear() {
+        for (UidIndex index : indexes.values()) {
+            if (index.file != null && index.file.exists() && !index.file.delete()) {
+                System.err.println("WARNING: could not delete " + index.file);
+            }
+        }
+        indexes.clear();
+    }
+
+    /**
+     * Forgets the loaded indexes without saving them, so the next lookup loads them from disk
+     * again.
+     */
+    static synchronized void discard() {
+        indexes.clear();
+    }
+
+    /**
+     * Makes the next lookup revalidate every loaded index and ask again for packages that were
+     * not installed, without dropping the resolved UIDs. Called between {@code -server}
+     * commands, where packages may have been installed, removed or reinstalled in the meantime.
+     */
+    static synchronized void invalidateAll() {
+        for (UidIndex index : indexes.values()) {
+            index.invalidate();
+        }
+    }
+
+    static synchronized void saveAll() {
+        for (UidIndex index : indexes.values()) {
+            index.save();
+        }
+    }
+
+    /**
+     * Resolves the package's UID for this user. Every user, secondary users and profiles
+     * included, looks the package up for itself: being installed for user 0 says nothing about
+     * another user. Packages that are not installed are remembered until {@link #invalidateAll}
+     * or the end of the process.
+     *
+     * @return the UID of the package for this user, or -1 if it is not installed
+     */
+    int getUid(String pkg) throws RemoteException {
+        validate();
+        Entry entry = entries.get(pkg);
+        if (entry == null) {
+            if (notInstalled.contains(pkg)) {
+                return -1;
+            }
+            PackageInfo info = Main.getPackageManagerService().getPackageInfo(pkg, 0, userId);
+            if (info == null || info.applicationInfo == null) {
+                notInstalled.add(pkg);
+                return -1;
+            }
+            entry = put(pkg, info);
+        }
+        return entry.uid;
+    }
+
+    /**
+     * Compares the indexed entry against a freshly fetched {@link PackageInfo} and re-indexes
+     * the package if it was updated since.
+     *
+     * @return false if the package changed since it was indexed
+     */
+    boolean isCurrent(String pkg, PackageInfo info) {
+        Entry entry = entries.get(pkg);
+        if (entry != null
+                && entry.uid == info.applicationInfo.uid
+                && entry.lastUpdateTime == info.lastUpdateTime
+                && entry.versionCode == info.getLongVersionCode()) {
+            return true;
+        }
+        put(pkg, info);
+        return false;
+    }
+
+    private Entry put(String pkg, PackageInfo info) {
+        Entry entry = new Entry(info.applicationInfo.uid, info.lastUpdateTime, info.getLongVersionCode());
+        entries.put(pkg, entry);
+        notInstalled.remove(pkg);
+        dirty = true;
+        return entry;
+    }
+
+    private synchronized void invalidate() {
+        notInstalled.clear();
+        validated = false;
+    }
+
+    private synchronized void validate() throws RemoteException {
+        if (validated) {
+            return;
+        }
+        if (!entries.isEmpty()) {
+            List<String> packages = new ArrayList<>(entries.keySet());
+            int[] uids = new int[packages.size()];
+            for (int i = 0; i < uids.length; i++) {
+                uids[i] = entries.get(packages.get(i)).uid;
+            }
+            IPackageManager packageManager = Main.getPackageManagerService();
+            String[] names = packageManager.getNamesForUids(uids);
+            Map<Integer, String[]> sharedUidPackages = new HashMap<>();
+            for (int i = 0; i < uids.length; i++) {
+                String name = names != null && i < names.length ? names[i] : null;
+                boolean valid;
+                if (name != null && name.indexOf(':') >= 0) {
+                    // shared UIDs come back as "<sharedUserId>:<uid>", ask for their packages instead
+                    String[] shared = sharedUidPackages.get(uids[i]);
+                    if (shared == null) {
+                        shared = packageManager.getPackagesForUid(uids[i]);
+                        sharedUidPackages.put(uids[i], shared != null ? shared : new String[0]);
+                    }
+                    valid = contains(shared, packages.get(i));
+                } else {
+                    valid = packages.get(i).equals(name);
+                }
+                if (!valid) {
+                    entries.remove(packages.get(i));
+                    dirty = true;
+                }
+            }
+        }
+        validated = true;
+    }
+
+    private static boolean contains(String[] names, String name) {
+        if (names != null) {
+            for (String candidate : names) {
+                if (name.equals(candidate)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private void load() {
+        if (file == null) {
+            return;
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            if (!HEADER.equals(reader.readLine())) {
+                dirty = true;
+                return;
+            }
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t");
+                if (fields.length != 4) {
+                    dirty = true;
+                    continue;
+                }
+                try {
+                    entries.put(fields[0], new Entry(Integer.parseInt(fields[1]), Long.parseLong(fields[2]), Long.parseLong(fields[3])));
+                } catch (NumberFormatException e) {
+                    dirty = true;
+                }
+            }
+        } catch (FileNotFoundException e) {
+            // first run
+        } catch (IOException e) {
+            System.err.println("WARNING: could not read " + file + ": " + e.getMessage());
+        }
+    }
+
+    private synchronized void save() {
+        if (file == null || !dirty) {
+            return;
+        }
+        File tmp = new File(file.getPath() + ".tmp");
+        try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmp), StandardCharsets.UTF_8))) {
+            writer.write(HEADER);
+            writer.newLine();
+            for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                Entry entry = e.getValue();
+                writer.write(e.getKey() + "\t" + entry.uid + "\t" + entry.lastUpdateTime + "\t" + entry.versionCode);
+                writer.newLine();
+            }
+        } catch (IOException e) {
+            System.err.println("WARNING: could not write " + tmp + ": " + e.getMessage());
+            return;
+        }
+        if (!tmp.renameTo(file)) {
+            System.err.println("WARNING: could not replace " + file);
+            return;
+        }
+        dirty = false;
+    }
+}
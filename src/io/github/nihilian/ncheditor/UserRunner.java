@@ -0,0 +1,189 @@
+package io.github.nihilian.ncheditor;
+
+import android.os.UserHandle;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Runs a command once per user for {@code -user}. Every user gets its own thread, and the
+ * user id is inherited by the threads it starts, so {@link Main#getPackageUid} and friends
+ * resolve UIDs for the right user without passing the id around. With several users their
+ * output is collected separately and printed user by user once all of them are done.
+ */
+final class UserRunner {
+    private static final Pattern USER_INFO = Pattern.compile("UserInfo\\{(\\d+):");
+
+    private static final InheritableThreadLocal<Integer> currentUser = new InheritableThreadLocal<>();
+    private static final InheritableThreadLocal<PrintStream[]> currentOutput = new InheritableThreadLocal<>();
+
+    private UserRunner() {}
+
+    /**
+     * @return the user of the running command, {@link UserHandle#USER_SYSTEM} unless it was
+     *         started by {@link #run}
+     */
+    static int currentUser() {
+        Integer userId = currentUser.get();
+        return userId != null ? userId : UserHandle.USER_SYSTEM;
+    }
+
+    /**
+     * @return whether the calling thread already runs on behalf of a single user
+     */
+    static boolean isDispatched() {
+        return currentUser.get() != null;
+    }
+
+    /**
+     * Parses a {@code -user} value: "all" or a comma separated list of user ids.
+     */
+    static List<Integer> parseUsers(String value) throws IOException {
+        if (value.equals("all")) {
+            return listUsers();
+        }
+        TreeSet<Integer> users = new TreeSet<>();
+        for (String id : value.split(",")) {
+            try {
+                users.add(Integer.parseInt(id.trim()));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("invalid user \"" + id + "\", expected a user id or \"all\"");
+            }
+        }
+        return new ArrayList<>(users);
+    }
+
+    /**
+     * There is no user manager binding in this tool, and shell may run {@code pm} anyway.
+     */
+    private static List<Integer> listUsers() throws IOException {
+        Process process = new ProcessBuilder("pm", "list", "users").redirectErrorStream(true).start();
+        TreeSet<Integer> users = new TreeSet<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                Matcher matcher = USER_INFO.matcher(line);
+                if (matcher.find()) {
+                    users.add(Integer.parseInt(matcher.group(1)));
+                }
+            }
+        }
+        try {
+            process.waitFor();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (users.isEmpty()) {
+            throw new IOException("could not list users with \"pm list users\"");
+        }
+        return new ArrayList<>(users);
+    }
+
+    /**
+     * Runs {@code Main.run(args)} for every user concurrently.
+     *
+     * @return 0 if the command succeeded for every user, otherwise the first failing status
+     */
+    static int run(List<Integer> users, final String[] args) {
+        if (users.size() == 1) {
+            return runAs(users.get(0), args);
+        }
+        final PrintStream stdout = System.out;
+        final PrintStream stderr = System.err;
+        final int[] status = new int[users.size()];
+        ByteArrayOutputStream[] out = new ByteArrayOutputStream[users.size()];
+        ByteArrayOutputStream[] err = new ByteArrayOutputStream[users.size()];
+        List<Thread> threads = new ArrayList<>(users.size());
+        System.setOut(routed(stdout, 0));
+        System.setErr(routed(stderr, 1));
+        try {
+            for (int i = 0; i < users.size(); i++) {
+                final int index = i;
+                final int userId = users.get(i);
+                out[i] = new ByteArrayOutputStream();
+                err[i] = new ByteArrayOutputStream();
+                final PrintStream[] output = {
+                    new PrintStream(out[i], true),
+                    new PrintStream(err[i], true)
+                };
+                Thread thread = new Thread(() -> {
+                    currentOutput.set(output);
+                    status[index] = runAs(userId, args);
+                }, "user-" + userId);
+                thread.start();
+                threads.add(thread);
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            System.setOut(stdout);
+            System.setErr(stderr);
+        }
+        int result = 0;
+        for (int i = 0; i < users.size(); i++) {
+            stdout.println("## user " + users.get(i));
+            stdout.write(out[i].toByteArray(), 0, out[i].size());
+            stdout.flush();
+            stderr.write(err[i].toByteArray(), 0, err[i].size());
+            stderr.flush();
+            if (result == 0) {
+                result = status[i];
+            }
+        }
+        return result;
+    }
+
+    private static int runAs(int userId, String[] args) {
+        Integer previous = currentUser.get();
+        currentUser.set(userId);
+        try {
+            return Main.run(args);
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            return 1;
+        } finally {
+            currentUser.set(previous);
+        }
+    }
+
+    /**
+     * @return a stream that writes to the calling thread's user output, or to {@code fallback}
+     *         on threads that do not belong to a user
+     */
+    private static PrintStream routed(final PrintStream fallback, final int which) {
+        return new PrintStream(new OutputStream() {
+            private OutputStream target() {
+                PrintStream[] output = currentOutput.get();
+                return output != null ? output[which] : fallback;
+            }
+
+            @Override
+            public void write(int b) throws IOException {
+                target().write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                target().write(b, off, len);
+            }
+
+            @Override
+            public void flush() throws IOException {
+                target().flush();
+            }
+        }, true);
+    }
+}
@@ -1,4 +1,25 @@
 package org.xmlpull.v1;
 
+import java.io.IOException;
+import java.io.InputStream;
+
 public interface XmlPullParser {
+
+    int START_DOCUMENT = 0;
+    int END_DOCUMENT = 1;
+    int START_TAG = 2;
+    int END_TAG = 3;
+    int TEXT = 4;
+
+    void setInput(InputStream inputStream, String inputEncoding) throws XmlPullParserException;
+
+    int getEventType() throws XmlPullParserException;
+
+    int next() throws XmlPullParserException, IOException;
+
+    int getDepth();
+
+    String getName();
+
+    String getAttributeValue(String namespace, String name);
 }
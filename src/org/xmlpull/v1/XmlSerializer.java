@@ -1,4 +1,23 @@
 package org.xmlpull.v1;
 
+import java.io.IOException;
+import java.io.OutputStream;
+
 public interface XmlSerializer {
+
+    void setFeature(String name, boolean state) throws IllegalArgumentException, IllegalStateException;
+
+    void setOutput(OutputStream os, String encoding) throws IOException, IllegalArgumentException, IllegalStateException;
+
+    void startDocument(String encoding, Boolean standalone) throws IOException, IllegalArgumentException, IllegalStateException;
+
+    void endDocument() throws IOException, IllegalArgumentException, IllegalStateException;
+
+    XmlSerializer startTag(String namespace, String name) throws IOException, IllegalArgumentException, IllegalStateException;
+
+    XmlSerializer attribute(String namespace, String name, String value) throws IOException, IllegalArgumentException, IllegalStateException;
+
+    XmlSerializer endTag(String namespace, String name) throws IOException, IllegalArgumentException, IllegalStateException;
+
+    void flush() throws IOException;
 }